@@ -21,7 +21,10 @@ import android.app.Application;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -49,11 +52,14 @@ import com.batch.android.Batch;
 import com.batch.android.Config;
 import com.batch.android.PushNotificationType;
 import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
+import com.benoitletondor.easybudgetapp.helper.DateMath;
 import com.benoitletondor.easybudgetapp.helper.Logger;
 import com.benoitletondor.easybudgetapp.helper.ParameterKeys;
 import com.benoitletondor.easybudgetapp.helper.Parameters;
 import com.benoitletondor.easybudgetapp.helper.UIHelper;
 import com.benoitletondor.easybudgetapp.helper.UserHelper;
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
+import com.benoitletondor.easybudgetapp.model.db.DBCache;
 import com.benoitletondor.easybudgetapp.notif.DailyNotifOptinService;
 import com.benoitletondor.easybudgetapp.notif.MonthlyReportNotifService;
 import com.benoitletondor.easybudgetapp.view.MainActivity;
@@ -147,6 +153,12 @@ public class EasyBudget extends Application implements PurchasesUpdatedListener,
         // Check if an update occurred and perform action if needed
         checkUpdateAction();
 
+        // Remove recurring expenses deleted during the previous session, their delete can't be cancelled anymore
+        AsyncDB.getInstance(this).purgeDeletedRecurringExpenses();
+
+        // Warm up the cache with the months saved when the app last went to background
+        DBCache.getInstance(this).loadSnapshot();
+
         // Crashlytics
         if( BuildConfig.CRASHLYTICS_ACTIVATED )
         {
@@ -169,6 +181,14 @@ public class EasyBudget extends Application implements PurchasesUpdatedListener,
         setupIab();
     }
 
+    @Override
+    public void onTrimMemory(int level)
+    {
+        super.onTrimMemory(level);
+
+        DBCache.getInstance(this).onTrimMemory(level);
+    }
+
     /**
      * Init app const and parameters
      */
@@ -259,6 +279,21 @@ public class EasyBudget extends Application implements PurchasesUpdatedListener,
 
             }
         });
+
+        // Days are computed with a cached timezone, reset it (and cached days) when it changes, then
+        // recompute the local days stored in DB
+        registerReceiver(new BroadcastReceiver()
+        {
+            @Override
+            public void onReceive(Context context, Intent intent)
+            {
+                Logger.debug("Timezone changed");
+
+                DateMath.onTimeZoneChanged();
+                DBCache.getInstance(context).wipeAll();
+                AsyncDB.getInstance(context).onTimeZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
     }
 
     /**
@@ -662,6 +697,8 @@ public class EasyBudget extends Application implements PurchasesUpdatedListener,
     private void onAppBackground()
     {
         Logger.debug("onAppBackground");
+
+        DBCache.getInstance(this).saveSnapshot();
     }
 
 // -------------------------------------->
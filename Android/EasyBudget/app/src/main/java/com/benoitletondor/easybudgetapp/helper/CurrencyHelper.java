@@ -20,8 +20,6 @@ import android.content.Context;
 import android.os.Build;
 import androidx.annotation.NonNull;
 
-import com.benoitletondor.easybudgetapp.BuildConfig;
-
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -43,6 +41,19 @@ public class CurrencyHelper
      * List of main currencies ISO 4217 code
      */
     private static final String[] MAIN_CURRENCIES = {"USD", "EUR", "GBP", "IRN", "AUD", "CAD", "SGD", "CHF", "MYR", "JPY", "CNY", "NZD"};
+    /**
+     * Veltkamp splitter (2^27 + 1), used to split a double into two halves whose products are exact
+     */
+    private static final double SPLITTER = 134217729.0;
+
+    /**
+     * Cached user currency, null until first use (updated by {@link #setUserCurrency(Context, Currency)})
+     */
+    private static volatile Currency userCurrency;
+    /**
+     * Currency formatter of each thread, since NumberFormat isn't thread safe
+     */
+    private static final ThreadLocal<CurrencyFormat> currencyFormats = new ThreadLocal<>();
 
 // ----------------------------------------->
 
@@ -167,15 +178,18 @@ public class CurrencyHelper
      */
     public static String getFormattedCurrencyString(@NonNull Context context, double amount)
     {
-        NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
-
-        // No fraction digits
-        currencyFormat.setMaximumFractionDigits(2);
-        currencyFormat.setMinimumFractionDigits(2);
+        final Locale locale = Locale.getDefault();
+        final Currency currency = getUserCurrency(context);
 
-        currencyFormat.setCurrency(getUserCurrency(context));
+        // Formatter is rebuilt only when the locale or the user currency changes
+        CurrencyFormat currencyFormat = currencyFormats.get();
+        if( currencyFormat == null || !currencyFormat.locale.equals(locale) || !currencyFormat.currency.equals(currency) )
+        {
+            currencyFormat = new CurrencyFormat(locale, currency);
+            currencyFormats.set(currencyFormat);
+        }
 
-        return currencyFormat.format(amount);
+        return currencyFormat.format.format(amount);
     }
 
     /**
@@ -196,39 +210,42 @@ public class CurrencyHelper
     }
 
     /**
-     * Return the integer value of the double * 100 to store it as integer in DB. This is an ugly
-     * method that shouldn't be there but rounding on doubles are a pain :/
+     * Return the integer value of the double * 100 to store it as integer in DB, rounded the same
+     * way as the amount is displayed by {@link #getFormattedAmountValue(double)}: half-even on the
+     * exact value of the double. Only uses arithmetic, without formatting.<br>
+     * <br>
+     * Negative values closer to 0 than half a cent give 0, as they are displayed. The previous
+     * implementation, that compared formatted strings, gave -1 for them since "-0.00" never matched
+     * the formatted value of 0. Amounts entered by the user have at most 2 decimals so they never
+     * fall in that range.
      *
      * @param value the double value
      * @return the corresponding int value (double * 100)
      */
     public static long getDBValueForDouble(double value)
     {
-        String stringValue = getFormattedAmountValue(value);
-        if(BuildConfig.DEBUG_LOG) Logger.debug("getDBValueForDouble: "+stringValue);
+        // value * 100 = product + error exactly (Dekker's product, 100 needs no split)
+        final double product = value * 100;
+        final double valueHigh = value * SPLITTER - (value * SPLITTER - value);
+        final double valueLow = value - valueHigh;
+        final double error = valueHigh * 100 - product + valueLow * 100;
 
-        long ceiledValue = (long) Math.ceil(value * 100);
-        double ceiledDoubleValue = ceiledValue / 100.d;
+        final double floor = Math.floor(product);
+        final double fraction = product - floor; // Exact
 
-        if( getFormattedAmountValue(ceiledDoubleValue).equals(stringValue) )
+        if( fraction > 0.5 || (fraction == 0.5 && error > 0) )
         {
-            if(BuildConfig.DEBUG_LOG) Logger.debug("getDBValueForDouble, return ceiled value: "+ceiledValue);
-            return ceiledValue;
+            return (long) floor + 1;
         }
 
-        long normalValue = (long) value * 100;
-        double normalDoubleValue = normalValue / 100.d;
-
-        if( getFormattedAmountValue(normalDoubleValue).equals(stringValue) )
+        if( fraction < 0.5 || error < 0 )
         {
-            if(BuildConfig.DEBUG_LOG) Logger.debug("getDBValueForDouble, return normal value: "+normalValue);
-            return normalValue;
+            return (long) floor;
         }
 
-        long flooredValue = (long) Math.floor(value * 100);
-        if(BuildConfig.DEBUG_LOG) Logger.debug("getDBValueForDouble, return floored value: "+flooredValue);
-
-        return flooredValue;
+        // Exactly half a cent
+        final long flooredValue = (long) floor;
+        return flooredValue % 2 == 0 ? flooredValue : flooredValue + 1;
     }
 
     /**
@@ -239,7 +256,14 @@ public class CurrencyHelper
      */
     public static Currency getUserCurrency(@NonNull Context context)
     {
-        return Currency.getInstance(Parameters.getInstance(context).getString(ParameterKeys.CURRENCY_ISO));
+        Currency currency = userCurrency;
+        if( currency == null )
+        {
+            currency = Currency.getInstance(Parameters.getInstance(context).getString(ParameterKeys.CURRENCY_ISO));
+            userCurrency = currency;
+        }
+
+        return currency;
     }
 
     /**
@@ -251,5 +275,41 @@ public class CurrencyHelper
     public static void setUserCurrency(@NonNull Context context, @NonNull Currency currency)
     {
         Parameters.getInstance(context).putString(ParameterKeys.CURRENCY_ISO, currency.getCurrencyCode());
+        userCurrency = currency;
+    }
+
+// ----------------------------------------->
+
+    /**
+     * Currency formatter built for a locale and a currency
+     */
+    private static final class CurrencyFormat
+    {
+        /**
+         * Locale the formatter was built with
+         */
+        @NonNull
+        private final Locale locale;
+        /**
+         * Currency the formatter was built with
+         */
+        @NonNull
+        private final Currency currency;
+        /**
+         * The formatter, with 2 fraction digits
+         */
+        @NonNull
+        private final NumberFormat format;
+
+        private CurrencyFormat(@NonNull Locale locale, @NonNull Currency currency)
+        {
+            this.locale = locale;
+            this.currency = currency;
+
+            format = NumberFormat.getCurrencyInstance(locale);
+            format.setMaximumFractionDigits(2);
+            format.setMinimumFractionDigits(2);
+            format.setCurrency(currency);
+        }
     }
 }
@@ -18,7 +18,6 @@ package com.benoitletondor.easybudgetapp.helper;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
-import androidx.core.util.Pair;
 
 import com.benoitletondor.easybudgetapp.R;
 
@@ -28,7 +27,6 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * Helper to work with dates
@@ -45,60 +43,104 @@ public class DateHelper
      */
     public static Date cleanDate(@NonNull Date date)
     {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-
-        cal.set(Calendar.MILLISECOND, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
+        return new Date(DateMath.getDayStart(date.getTime()));
+    }
 
-        return cal.getTime();
+    /**
+     * Remove hour, minutes, seconds and ms data from a date and return its GMT value
+     *
+     * @param date
+     * @return a cleaned value of this date at GMT
+     */
+    public static Date cleanGMTDate(@NonNull Date date)
+    {
+        return new Date(DateMath.getGMTDayStart(date.getTime()));
     }
 
     /**
-     * Get the timestamp range for a given day starting at GMT - 11 finishing at GMT + 12
+     * Get the epoch day of the given timestamp: the number of days between 1970-01-01 and the day
+     * of the timestamp in the local timezone. It identifies the same day as {@link #cleanGMTDate(Date)}.
      *
-     * @param date the day
-     * @return a range of timestamps
+     * @param timestamp
+     * @return the epoch day
+     * @see DateMath#getEpochDay(long)
      */
-    public static Pair<Long, Long> getTimestampRangeForDay(@NonNull Date date)
+    public static int getEpochDay(long timestamp)
     {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return DateMath.getEpochDay(timestamp);
+    }
 
-        cal.set(Calendar.MILLISECOND, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
+    /**
+     * Get the epoch day of the given date (see {@link #getEpochDay(long)})
+     *
+     * @param date
+     * @return the epoch day
+     */
+    public static int getEpochDay(@NonNull Date date)
+    {
+        return DateMath.getEpochDay(date.getTime());
+    }
 
-        cal.add(Calendar.HOUR_OF_DAY, -11);
-        long start = cal.getTimeInMillis();
-        cal.add(Calendar.HOUR_OF_DAY, 23);
-        long end = cal.getTimeInMillis();
+    /**
+     * Get the epoch day of the given day, using integer arithmetic only
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @param dayOfMonth the day of the month, from 1
+     * @return the epoch day
+     * @see DateMath#getEpochDay(int, int, int)
+     */
+    public static int getEpochDay(int year, int month, int dayOfMonth)
+    {
+        return DateMath.getEpochDay(year, month, dayOfMonth);
+    }
 
-        return new Pair<>(start, end);
+    /**
+     * Get the epoch month of the given month: the number of months since year 0
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @return the epoch month
+     * @see DateMath#getEpochMonth(int, int)
+     */
+    public static int getEpochMonth(int year, int month)
+    {
+        return DateMath.getEpochMonth(year, month);
     }
 
     /**
-     * Remove hour, minutes, seconds and ms data from a date and return its GMT value
+     * Get the epoch month containing the given epoch day
      *
-     * @param date
-     * @return a cleaned value of this date at GMT
+     * @param epochDay
+     * @return the epoch month (see {@link #getEpochMonth(int, int)})
+     * @see DateMath#getEpochMonth(int)
      */
-    public static Date cleanGMTDate(@NonNull Date date)
+    public static int getEpochMonth(int epochDay)
     {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(date);
-        cal.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return DateMath.getEpochMonth(epochDay);
+    }
 
-        cal.set(Calendar.MILLISECOND, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
+    /**
+     * Get the epoch day of the first day of the given epoch month
+     *
+     * @param epochMonth (see {@link #getEpochMonth(int, int)})
+     * @return the epoch day
+     * @see DateMath#getFirstEpochDayOfMonth(int)
+     */
+    public static int getFirstEpochDayOfMonth(int epochMonth)
+    {
+        return DateMath.getFirstEpochDayOfMonth(epochMonth);
+    }
 
-        return cal.getTime();
+    /**
+     * Get the date of the given epoch day at 00:00 in the local timezone
+     *
+     * @param epochDay
+     * @return a new date
+     */
+    public static Date getDateForEpochDay(int epochDay)
+    {
+        return new Date(DateMath.getDayStart(epochDay));
     }
 
     /**
@@ -0,0 +1,325 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.helper;
+
+import androidx.annotation.NonNull;
+
+import java.util.TimeZone;
+
+/**
+ * Date arithmetic on primitives (timestamps, epoch days and epoch months) using integer math only,
+ * without allocating any Calendar. {@link DateHelper} methods working on {@link java.util.Date} are
+ * adapters over this class.<br>
+ * <br>
+ * The local timezone is cached, as well as the boundaries of the last computed local day, so that
+ * repeated calls for the same day don't even query the timezone. {@link #onTimeZoneChanged()} must
+ * be called when the timezone of the device changes.
+ *
+ * @author Benoit LETONDOR
+ */
+public final class DateMath
+{
+    /**
+     * Length of a day in ms
+     */
+    public static final long DAY_LENGTH = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Cached local timezone, null until first use
+     */
+    private static volatile TimeZone timeZone;
+    /**
+     * Boundaries of the last computed local day, null if none
+     */
+    private static volatile CachedDay cachedDay;
+
+// -------------------------------------------->
+
+    private DateMath()
+    {
+
+    }
+
+    /**
+     * Reset the cached timezone and day, to call when the timezone of the device changes
+     */
+    public static void onTimeZoneChanged()
+    {
+        // The cached day is ignored as soon as it doesn't belong to the cached timezone
+        timeZone = null;
+    }
+
+    /**
+     * Get the epoch day of the given timestamp: the number of days between 1970-01-01 and the day
+     * of the timestamp in the local timezone
+     *
+     * @param timestamp
+     * @return the epoch day
+     */
+    public static int getEpochDay(long timestamp)
+    {
+        final TimeZone zone = getTimeZone();
+
+        CachedDay day = cachedDay;
+        if( day == null || day.zone != zone || timestamp < day.first || timestamp >= day.nextFirst )
+        {
+            final int epochDay = getEpochDay(zone, timestamp);
+
+            day = new CachedDay(zone, epochDay, getDayStart(zone, epochDay, false), getDayStart(zone, epochDay + 1, false),
+                getDayStart(zone, epochDay, true), getDayStart(zone, epochDay + 1, true));
+            cachedDay = day;
+        }
+
+        return day.epochDay;
+    }
+
+    /**
+     * Get the timestamp of the start of the given day in the local timezone: 00:00 (the last one if
+     * it happens twice), or the end of the DST transition if 00:00 doesn't exist that day
+     *
+     * @param epochDay
+     * @return the timestamp of the first ms of the day
+     */
+    public static long getDayStart(int epochDay)
+    {
+        final TimeZone zone = getTimeZone();
+
+        final CachedDay day = cachedDay;
+        if( day != null && day.zone == zone )
+        {
+            if( epochDay == day.epochDay )
+            {
+                return day.start;
+            }
+
+            if( epochDay == day.epochDay + 1 )
+            {
+                return day.end;
+            }
+        }
+
+        return getDayStart(zone, epochDay, false);
+    }
+
+    /**
+     * Get the timestamp of the start of the local day of the given timestamp
+     *
+     * @param timestamp
+     * @return the timestamp of the first ms of the day
+     */
+    public static long getDayStart(long timestamp)
+    {
+        return getDayStart(getEpochDay(timestamp));
+    }
+
+    /**
+     * Get the timestamp of the local day of the given timestamp at 00:00 GMT
+     *
+     * @param timestamp
+     * @return the GMT timestamp of the day
+     */
+    public static long getGMTDayStart(long timestamp)
+    {
+        return getEpochDay(timestamp) * DAY_LENGTH;
+    }
+
+    /**
+     * Get the epoch day of the given day
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @param dayOfMonth the day of the month, from 1
+     * @return the epoch day
+     */
+    public static int getEpochDay(int year, int month, int dayOfMonth)
+    {
+        // Years start on March 1st so that the leap day is the last day of the year
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Get the epoch month of the given month: the number of months since year 0
+     *
+     * @param year the year
+     * @param month the month, from 1 to 12
+     * @return the epoch month
+     */
+    public static int getEpochMonth(int year, int month)
+    {
+        return year * 12 + month - 1;
+    }
+
+    /**
+     * Get the epoch month containing the given epoch day
+     *
+     * @param epochDay
+     * @return the epoch month (see {@link #getEpochMonth(int, int)})
+     */
+    public static int getEpochMonth(int epochDay)
+    {
+        final int z = epochDay + 719468;
+        final int era = (z >= 0 ? z : z - 146096) / 146097;
+        final int dayOfEra = z - era * 146097;
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        return getEpochMonth(year, month);
+    }
+
+    /**
+     * Get the epoch day of the first day of the given epoch month
+     *
+     * @param epochMonth (see {@link #getEpochMonth(int, int)})
+     * @return the epoch day
+     */
+    public static int getFirstEpochDayOfMonth(int epochMonth)
+    {
+        return getEpochDay(epochMonth / 12, epochMonth % 12 + 1, 1);
+    }
+
+    /**
+     * Get the timestamp of the start of the first day of the given month in the local timezone
+     *
+     * @param epochMonth (see {@link #getEpochMonth(int, int)})
+     * @return the timestamp of the first ms of the month
+     */
+    public static long getMonthStart(int epochMonth)
+    {
+        return getDayStart(getFirstEpochDayOfMonth(epochMonth));
+    }
+
+// -------------------------------------------->
+
+    /**
+     * @return the cached local timezone
+     */
+    @NonNull
+    private static TimeZone getTimeZone()
+    {
+        TimeZone zone = timeZone;
+        if( zone == null )
+        {
+            // getDefault() returns a copy, so it's only called when the timezone changes
+            zone = TimeZone.getDefault();
+            timeZone = zone;
+        }
+
+        return zone;
+    }
+
+    /**
+     * Get the epoch day of the given timestamp in the given timezone, without cache
+     */
+    private static int getEpochDay(@NonNull TimeZone zone, long timestamp)
+    {
+        final long localTimestamp = timestamp + zone.getOffset(timestamp);
+
+        long epochDay = localTimestamp / DAY_LENGTH;
+        if( localTimestamp % DAY_LENGTH < 0 )
+        {
+            epochDay--;
+        }
+
+        return (int) epochDay;
+    }
+
+    /**
+     * Get the timestamp of the start of the given day in the given timezone, without cache
+     *
+     * @param first true to get the first ms of the day, that differs from the start only if 00:00
+     *              happens twice
+     */
+    private static long getDayStart(@NonNull TimeZone zone, int epochDay, boolean first)
+    {
+        final long localMidnight = epochDay * DAY_LENGTH;
+
+        // Offsets around the day, that differ only if there's a DST transition close to midnight
+        final int offsetBefore = zone.getOffset(localMidnight - DAY_LENGTH / 2);
+        final int offsetAfter = zone.getOffset(localMidnight + DAY_LENGTH / 2);
+
+        final long startBefore = localMidnight - offsetBefore;
+        if( offsetBefore == offsetAfter )
+        {
+            return startBefore;
+        }
+
+        // Like Calendar: the last 00:00 if it happens twice, or 00:00 with the offset before the
+        // transition if it's skipped (which is the end of the transition)
+        final long startAfter = localMidnight - offsetAfter;
+        final boolean isStartBeforeMidnight = startBefore + zone.getOffset(startBefore) == localMidnight;
+        final boolean isStartAfterMidnight = startAfter + zone.getOffset(startAfter) == localMidnight;
+
+        if( isStartBeforeMidnight && isStartAfterMidnight )
+        {
+            return first ? Math.min(startBefore, startAfter) : Math.max(startBefore, startAfter);
+        }
+
+        return isStartAfterMidnight ? startAfter : startBefore;
+    }
+
+// -------------------------------------------->
+
+    /**
+     * Immutable boundaries of a local day
+     */
+    private static final class CachedDay
+    {
+        /**
+         * Timezone the boundaries were computed with
+         */
+        private final TimeZone zone;
+        /**
+         * Epoch day
+         */
+        private final int epochDay;
+        /**
+         * Timestamp of the start of the day (see {@link #getDayStart(int)})
+         */
+        private final long start;
+        /**
+         * Timestamp of the start of the next day
+         */
+        private final long end;
+        /**
+         * Timestamp of the first ms of the day
+         */
+        private final long first;
+        /**
+         * Timestamp of the first ms of the next day
+         */
+        private final long nextFirst;
+
+        private CachedDay(@NonNull TimeZone zone, int epochDay, long start, long end, long first, long nextFirst)
+        {
+            this.zone = zone;
+            this.epochDay = epochDay;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.nextFirst = nextFirst;
+        }
+    }
+}
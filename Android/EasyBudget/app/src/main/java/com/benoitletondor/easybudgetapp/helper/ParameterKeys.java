@@ -135,4 +135,8 @@ public class ParameterKeys
      * Cache storage of the IAB status
      */
     public static final String PREMIUM = "premium";
+    /**
+     * Generation of the DB content, changed on every write (long)
+     */
+    public static final String DB_GENERATION = "db_generation";
 }
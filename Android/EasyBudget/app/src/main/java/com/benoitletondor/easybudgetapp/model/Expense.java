@@ -43,7 +43,8 @@ public class Expense implements Parcelable
     /**
      * Amount of this expense (can be < 0).
      */
-    private double  amount;
+    @NonNull
+    private Money   amount;
     /**
      * Date of the expense
      */
@@ -53,6 +54,11 @@ public class Expense implements Parcelable
      */
     @Nullable
     private RecurringExpense recurringExpense;
+    /**
+     * Date of the occurrence of the recurring expense this expense is (can be null if not a recurring one)
+     */
+    @Nullable
+    private Date occurrenceDate;
 
 // --------------------------------->
 
@@ -62,7 +68,7 @@ public class Expense implements Parcelable
      * @param amount
      * @param date
      */
-    public Expense(@NonNull String title, double amount, @NonNull Date date)
+    public Expense(@NonNull String title, @NonNull Money amount, @NonNull Date date)
     {
         this(null, title, amount, date, null);
     }
@@ -74,7 +80,7 @@ public class Expense implements Parcelable
      * @param date
      * @param recurringExpense
      */
-    public Expense(@NonNull String title, double amount, @NonNull Date date, @Nullable RecurringExpense recurringExpense)
+    public Expense(@NonNull String title, @NonNull Money amount, @NonNull Date date, @Nullable RecurringExpense recurringExpense)
     {
         this(null, title, amount, date, recurringExpense);
     }
@@ -87,7 +93,21 @@ public class Expense implements Parcelable
      * @param date
      * @param recurringExpense
      */
-    public Expense(Long id, @NonNull String title, double amount, @NonNull Date date, @Nullable RecurringExpense recurringExpense)
+    public Expense(Long id, @NonNull String title, @NonNull Money amount, @NonNull Date date, @Nullable RecurringExpense recurringExpense)
+    {
+        this(id, title, amount, date, recurringExpense, recurringExpense != null ? date : null);
+    }
+
+    /**
+     *
+     * @param id
+     * @param title
+     * @param amount
+     * @param date
+     * @param recurringExpense
+     * @param occurrenceDate
+     */
+    public Expense(Long id, @NonNull String title, @NonNull Money amount, @NonNull Date date, @Nullable RecurringExpense recurringExpense, @Nullable Date occurrenceDate)
     {
         this.id = id;
 
@@ -98,7 +118,7 @@ public class Expense implements Parcelable
 
         this.title = title;
 
-        if( amount == 0 )
+        if( amount.isZero() )
         {
             throw new IllegalArgumentException("amount should be != 0");
         }
@@ -106,6 +126,7 @@ public class Expense implements Parcelable
         this.amount = amount;
         this.date = DateHelper.cleanDate(date);
         this.recurringExpense = recurringExpense;
+        this.occurrenceDate = occurrenceDate != null ? DateHelper.cleanDate(occurrenceDate) : null;
     }
 
     /**
@@ -116,9 +137,12 @@ public class Expense implements Parcelable
     {
         id = (Long) in.readValue(Long.class.getClassLoader());
         title = in.readString();
-        amount = in.readDouble();
+        amount = Money.ofCents(in.readLong());
         date = new Date(in.readLong());
         recurringExpense = in.readParcelable(RecurringExpense.class.getClassLoader());
+
+        long occurrenceDateTimestamp = in.readLong();
+        occurrenceDate = occurrenceDateTimestamp != -1 ? new Date(occurrenceDateTimestamp) : null;
     }
 
 // --------------------------------->
@@ -149,6 +173,12 @@ public class Expense implements Parcelable
         return recurringExpense != null;
     }
 
+    @Nullable
+    public Date getOccurrenceDate()
+    {
+        return occurrenceDate;
+    }
+
     @NonNull
     public String getTitle()
     {
@@ -171,19 +201,20 @@ public class Expense implements Parcelable
         this.date = DateHelper.cleanDate(date);
     }
 
-    public double getAmount()
+    @NonNull
+    public Money getAmount()
     {
         return amount;
     }
 
-    public void setAmount(double amount)
+    public void setAmount(@NonNull Money amount)
     {
         this.amount = amount;
     }
 
     public boolean isRevenue()
     {
-        return amount < 0;
+        return amount.signum() < 0;
     }
 
 // --------------------------------->
@@ -193,9 +224,10 @@ public class Expense implements Parcelable
     {
         dest.writeValue(id);
         dest.writeString(title);
-        dest.writeDouble(amount);
+        dest.writeLong(amount.getCents());
         dest.writeLong(date.getTime());
         dest.writeParcelable(recurringExpense, flags);
+        dest.writeLong(occurrenceDate != null ? occurrenceDate.getTime() : -1);
     }
 
     @Override
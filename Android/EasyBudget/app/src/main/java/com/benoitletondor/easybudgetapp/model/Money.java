@@ -0,0 +1,152 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model;
+
+import androidx.annotation.NonNull;
+
+import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
+
+/**
+ * Immutable amount of money stored as a number of cents, the way it's stored in DB. Sums are exact:
+ * amounts are only converted to double to be displayed or from a user input.
+ *
+ * @author Benoit LETONDOR
+ */
+public final class Money
+{
+    /**
+     * Amount of 0
+     */
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * Amount in cents
+     */
+    private final long cents;
+
+// ------------------------------------->
+
+    private Money(long cents)
+    {
+        this.cents = cents;
+    }
+
+    /**
+     * @param cents amount in cents
+     * @return the money for the given amount in cents
+     */
+    @NonNull
+    public static Money ofCents(long cents)
+    {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Convert an amount entered or displayed as a double (see {@link CurrencyHelper#getDBValueForDouble(double)})
+     *
+     * @param amount the amount
+     * @return the money for the given amount
+     */
+    @NonNull
+    public static Money ofAmount(double amount)
+    {
+        return ofCents(CurrencyHelper.getDBValueForDouble(amount));
+    }
+
+// ------------------------------------->
+
+    /**
+     * @return the amount in cents
+     */
+    public long getCents()
+    {
+        return cents;
+    }
+
+    /**
+     * @return the amount as a double, to display it
+     */
+    public double toDouble()
+    {
+        return (double) cents / 100.d;
+    }
+
+    /**
+     * @return -1, 0 or 1 if the amount is negative, 0 or positive
+     */
+    public int signum()
+    {
+        return Long.signum(cents);
+    }
+
+    /**
+     * @return true if the amount is 0
+     */
+    public boolean isZero()
+    {
+        return cents == 0;
+    }
+
+    /**
+     * @param other
+     * @return the sum of this amount and the other one
+     */
+    @NonNull
+    public Money plus(@NonNull Money other)
+    {
+        return ofCents(cents + other.cents);
+    }
+
+    /**
+     * @param other
+     * @return the difference of this amount and the other one
+     */
+    @NonNull
+    public Money minus(@NonNull Money other)
+    {
+        return ofCents(cents - other.cents);
+    }
+
+    /**
+     * @return the opposite of this amount
+     */
+    @NonNull
+    public Money negate()
+    {
+        return ofCents(-cents);
+    }
+
+// ------------------------------------->
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return this == o || (o instanceof Money && ((Money) o).cents == cents);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (cents ^ (cents >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(toDouble());
+    }
+}
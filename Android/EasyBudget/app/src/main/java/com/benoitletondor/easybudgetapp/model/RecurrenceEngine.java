@@ -0,0 +1,224 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Computes the occurrences of a {@link RecurringExpense} on demand from its rule: occurrence n
+ * happens n periods after the recurring date, and only occurrences within the start and end
+ * dates of the recurring expense exist.
+ *
+ * @author Benoit LETONDOR
+ */
+public final class RecurrenceEngine
+{
+    /**
+     * Average length of a month in ms, used to estimate occurrence indexes
+     */
+    private static final long AVERAGE_MONTH_LENGTH = 2629746000L;
+    /**
+     * Average length of a year in ms, used to estimate occurrence indexes
+     */
+    private static final long AVERAGE_YEAR_LENGTH = 31556952000L;
+    /**
+     * Length of a week in ms, used to estimate occurrence indexes
+     */
+    private static final long WEEK_LENGTH = 7 * 24 * 60 * 60 * 1000L;
+
+// ------------------------------------->
+
+    private RecurrenceEngine()
+    {
+
+    }
+
+// ------------------------------------->
+
+    /**
+     * Get the date of the occurrence at the given index (regardless of start and end dates)
+     *
+     * @param expense the recurring expense
+     * @param index index of the occurrence (0 is the recurring date)
+     * @return the date of the occurrence
+     */
+    @NonNull
+    public static Date getOccurrenceDate(@NonNull RecurringExpense expense, int index)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(expense.getRecurringDate());
+
+        switch (expense.getType())
+        {
+            case WEEKLY:
+                cal.add(Calendar.WEEK_OF_YEAR, index);
+                break;
+            case BI_WEEKLY:
+                cal.add(Calendar.WEEK_OF_YEAR, 2 * index);
+                break;
+            case MONTHLY:
+                cal.add(Calendar.MONTH, index);
+                break;
+            case YEARLY:
+                cal.add(Calendar.YEAR, index);
+                break;
+        }
+
+        return cal.getTime();
+    }
+
+    /**
+     * Get all occurrences of the recurring expense happening between the given timestamps
+     *
+     * @param expense the recurring expense
+     * @param from start timestamp (included)
+     * @param to end timestamp (included)
+     * @return the ordered list of occurrence dates
+     */
+    @NonNull
+    public static List<Date> getOccurrences(@NonNull RecurringExpense expense, long from, long to)
+    {
+        List<Date> occurrences = new ArrayList<>();
+
+        int lastIndex = getLastIndex(expense);
+        for(int index = Math.max(getFirstIndex(expense), getFirstIndexAtOrAfter(expense, from)); index <= lastIndex; index++)
+        {
+            Date occurrence = getOccurrenceDate(expense, index);
+            if( occurrence.getTime() > to )
+            {
+                break;
+            }
+
+            occurrences.add(occurrence);
+        }
+
+        return occurrences;
+    }
+
+    /**
+     * Count the occurrences of the recurring expense happening before the given timestamp
+     *
+     * @param expense the recurring expense
+     * @param to end timestamp (included)
+     * @return the number of occurrences
+     */
+    public static int countOccurrencesUntil(@NonNull RecurringExpense expense, long to)
+    {
+        if( to == Long.MAX_VALUE )
+        {
+            throw new IllegalArgumentException("Unable to count an infinite number of occurrences");
+        }
+
+        int lastIndex = Math.min(getLastIndex(expense), getFirstIndexAtOrAfter(expense, to + 1) - 1);
+        return Math.max(0, lastIndex - getFirstIndex(expense) + 1);
+    }
+
+// ------------------------------------->
+
+    /**
+     * Get the index of the first occurrence that is not removed by the start date
+     *
+     * @param expense the recurring expense
+     * @return index of the first occurrence
+     */
+    private static int getFirstIndex(@NonNull RecurringExpense expense)
+    {
+        Date startDate = expense.getStartDate();
+        if( startDate == null )
+        {
+            return 0;
+        }
+
+        return getFirstIndexAtOrAfter(expense, startDate.getTime());
+    }
+
+    /**
+     * Get the index of the last occurrence that is not removed by the end date
+     *
+     * @param expense the recurring expense
+     * @return index of the last occurrence, {@link Integer#MAX_VALUE} if the expense never ends
+     */
+    private static int getLastIndex(@NonNull RecurringExpense expense)
+    {
+        Date endDate = expense.getEndDate();
+        if( endDate == null )
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        return getFirstIndexAtOrAfter(expense, endDate.getTime() + 1) - 1;
+    }
+
+    /**
+     * Get the index of the first occurrence happening at or after the given timestamp
+     *
+     * @param expense the recurring expense
+     * @param timestamp the timestamp
+     * @return the index of the occurrence
+     */
+    private static int getFirstIndexAtOrAfter(@NonNull RecurringExpense expense, long timestamp)
+    {
+        long recurringDate = expense.getRecurringDate().getTime();
+        if( timestamp <= recurringDate )
+        {
+            return 0;
+        }
+
+        // Estimate the index using the average period length and then adjust it
+        int index = (int) Math.min(Integer.MAX_VALUE - 1, (timestamp - recurringDate) / getAveragePeriodLength(expense.getType()));
+
+        while( index > 0 && getOccurrenceDate(expense, index - 1).getTime() >= timestamp )
+        {
+            index--;
+        }
+
+        while( getOccurrenceDate(expense, index).getTime() < timestamp )
+        {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * Get the average length of a period for the given type
+     *
+     * @param type type of recurring expense
+     * @return the length in ms
+     */
+    private static long getAveragePeriodLength(@NonNull RecurringExpenseType type)
+    {
+        switch (type)
+        {
+            case WEEKLY:
+                return WEEK_LENGTH;
+            case BI_WEEKLY:
+                return 2 * WEEK_LENGTH;
+            case MONTHLY:
+                return AVERAGE_MONTH_LENGTH;
+            case YEARLY:
+                return AVERAGE_YEAR_LENGTH;
+        }
+
+        throw new IllegalArgumentException("Unknown recurring expense type: "+type);
+    }
+}
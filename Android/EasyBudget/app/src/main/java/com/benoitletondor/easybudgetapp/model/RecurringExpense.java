@@ -19,6 +19,7 @@ package com.benoitletondor.easybudgetapp.model;
 import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.benoitletondor.easybudgetapp.helper.DateHelper;
 
@@ -46,7 +47,8 @@ public class RecurringExpense implements Parcelable
     /**
      * Amount of this expense when created
      */
-    private double  amount;
+    @NonNull
+    private Money   amount;
     /**
      * Is this expense modified (Not implemented yet)
      */
@@ -56,6 +58,16 @@ public class RecurringExpense implements Parcelable
      */
     @NonNull
     private final RecurringExpenseType type;
+    /**
+     * Occurrences happening before this date are removed (null if none)
+     */
+    @Nullable
+    private Date    startDate;
+    /**
+     * Occurrences happening after this date are removed (null if the expense never ends)
+     */
+    @Nullable
+    private Date    endDate;
 
 // ---------------------------------->
 
@@ -66,9 +78,9 @@ public class RecurringExpense implements Parcelable
      * @param recurringDate
      * @param type
      */
-    public RecurringExpense(@NonNull String title, double startAmount, @NonNull Date recurringDate, @NonNull RecurringExpenseType type)
+    public RecurringExpense(@NonNull String title, @NonNull Money startAmount, @NonNull Date recurringDate, @NonNull RecurringExpenseType type)
     {
-        if (startAmount == 0)
+        if (startAmount.isZero())
         {
             throw new IllegalArgumentException("startAmount should be != 0");
         }
@@ -88,7 +100,7 @@ public class RecurringExpense implements Parcelable
      * @param type
      * @param modified
      */
-    public RecurringExpense(Long id, @NonNull String title, double startAmount, @NonNull Date recurringDate, @NonNull RecurringExpenseType type, boolean modified)
+    public RecurringExpense(Long id, @NonNull String title, @NonNull Money startAmount, @NonNull Date recurringDate, @NonNull RecurringExpenseType type, boolean modified)
     {
         this(title, startAmount, recurringDate, type);
 
@@ -96,6 +108,25 @@ public class RecurringExpense implements Parcelable
         this.modified = modified;
     }
 
+    /**
+     *
+     * @param id
+     * @param title
+     * @param startAmount
+     * @param recurringDate
+     * @param type
+     * @param modified
+     * @param startDate
+     * @param endDate
+     */
+    public RecurringExpense(Long id, @NonNull String title, @NonNull Money startAmount, @NonNull Date recurringDate, @NonNull RecurringExpenseType type, boolean modified, @Nullable Date startDate, @Nullable Date endDate)
+    {
+        this(id, title, startAmount, recurringDate, type, modified);
+
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
     /**
      *
      * @param in
@@ -105,9 +136,15 @@ public class RecurringExpense implements Parcelable
         id = (Long) in.readValue(Long.class.getClassLoader());
         title = in.readString();
         recurringDate = new Date(in.readLong());
-        amount = in.readDouble();
+        amount = Money.ofCents(in.readLong());
         modified = in.readByte() != 0;
         type = RecurringExpenseType.valueOf(in.readString());
+
+        long startDateTimestamp = in.readLong();
+        startDate = startDateTimestamp != -1 ? new Date(startDateTimestamp) : null;
+
+        long endDateTimestamp = in.readLong();
+        endDate = endDateTimestamp != -1 ? new Date(endDateTimestamp) : null;
     }
 
 // ---------------------------------->
@@ -136,7 +173,8 @@ public class RecurringExpense implements Parcelable
      *
      * @return
      */
-    public double getAmount()
+    @NonNull
+    public Money getAmount()
     {
         return amount;
     }
@@ -178,6 +216,62 @@ public class RecurringExpense implements Parcelable
         return type;
     }
 
+    /**
+     *
+     * @return
+     */
+    @Nullable
+    public Date getStartDate()
+    {
+        return startDate;
+    }
+
+    /**
+     *
+     * @param startDate
+     */
+    public void setStartDate(@Nullable Date startDate)
+    {
+        this.startDate = startDate != null ? DateHelper.cleanDate(startDate) : null;
+    }
+
+    /**
+     *
+     * @return
+     */
+    @Nullable
+    public Date getEndDate()
+    {
+        return endDate;
+    }
+
+    /**
+     *
+     * @param endDate
+     */
+    public void setEndDate(@Nullable Date endDate)
+    {
+        this.endDate = endDate != null ? DateHelper.cleanDate(endDate) : null;
+    }
+
+    /**
+     * Copy this recurring expense with other start and end dates, leaving this one untouched since
+     * it may be shared with other threads
+     *
+     * @param startDate start date of the copy (null if none)
+     * @param endDate end date of the copy (null if the expense never ends)
+     * @return the copy
+     */
+    @NonNull
+    public RecurringExpense withBounds(@Nullable Date startDate, @Nullable Date endDate)
+    {
+        RecurringExpense copy = new RecurringExpense(id, title, amount, recurringDate, type, modified);
+        copy.setStartDate(startDate);
+        copy.setEndDate(endDate);
+
+        return copy;
+    }
+
 // -------------------------------->
 
     @Override
@@ -186,9 +280,11 @@ public class RecurringExpense implements Parcelable
         dest.writeValue(id);
         dest.writeString(title);
         dest.writeLong(recurringDate.getTime());
-        dest.writeDouble(amount);
+        dest.writeLong(amount.getCents());
         dest.writeByte((byte) (modified ? 1 : 0));
         dest.writeString(type.name());
+        dest.writeLong(startDate != null ? startDate.getTime() : -1);
+        dest.writeLong(endDate != null ? endDate.getTime() : -1);
     }
 
     @Override
@@ -0,0 +1,316 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.benoitletondor.easybudgetapp.helper.Logger;
+import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
+import com.benoitletondor.easybudgetapp.model.RecurringExpense;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous facade over {@link DB}: every operation runs on a background thread and its result
+ * is delivered to an optional callback on the main thread.<br>
+ * <br>
+ * Operations of every instance are executed one at a time in submission order, so a read always
+ * sees the writes that were submitted before it.<br>
+ * <br>
+ * Each component creates its own instance and {@link #close()}s it when it's destroyed: callbacks
+ * of a closed instance are dropped.
+ *
+ * @author Benoit LETONDOR
+ */
+public class AsyncDB
+{
+    /**
+     * Single thread executor that runs the operations of every instance
+     */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Handler used to deliver results on the main thread
+     */
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * DB used by operations, only accessed from the executor thread
+     */
+    private final DB db;
+    /**
+     * Is this instance closed, only accessed from the main thread
+     */
+    private boolean closed = false;
+
+// ------------------------------------->
+
+    /**
+     * Create an instance for a component that will {@link #close()} it when it's destroyed
+     *
+     * @param context
+     */
+    public AsyncDB(@NonNull Context context)
+    {
+        db = new DB(context.getApplicationContext());
+    }
+
+    /**
+     * Drop the callbacks of operations that are pending or running. Operations themselves still run.
+     */
+    @MainThread
+    public void close()
+    {
+        closed = true;
+    }
+
+// ------------------------------------->
+
+    /**
+     * Run the given operation on the DB thread
+     *
+     * @param operation the operation to run
+     * @param callback optional callback that will receive the result on the main thread, or null if the operation fails
+     * @return a future of the result
+     */
+    @NonNull
+    public <T> Future<T> execute(@NonNull final Operation<T> operation, @Nullable final Callback<T> callback)
+    {
+        return execute(operation, null, callback);
+    }
+
+    /**
+     * Run the given operation on the DB thread
+     *
+     * @param operation the operation to run
+     * @param errorResult result delivered to the callback if the operation fails
+     * @param callback optional callback that will receive the result on the main thread
+     * @return a future of the result
+     */
+    @NonNull
+    public <T> Future<T> execute(@NonNull final Operation<T> operation, @Nullable final T errorResult, @Nullable final Callback<T> callback)
+    {
+        return executor.submit(() ->
+        {
+            T result;
+            try
+            {
+                result = operation.execute(db);
+            }
+            catch (Exception e)
+            {
+                Logger.error(false, "AsyncDB: Error while executing operation", e);
+                result = errorResult;
+            }
+
+            if( callback != null )
+            {
+                final T callbackResult = result;
+                mainHandler.post(() ->
+                {
+                    if( !closed )
+                    {
+                        callback.onResult(callbackResult);
+                    }
+                });
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * @see DB#persistExpense(Expense, boolean)
+     */
+    @NonNull
+    public Future<Boolean> persistExpense(@NonNull final Expense expense, final boolean forcePersist, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.persistExpense(expense, forcePersist), false, callback);
+    }
+
+    /**
+     * @see DB#deleteExpense(Expense)
+     */
+    @NonNull
+    public Future<Boolean> deleteExpense(@NonNull final Expense expense, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.deleteExpense(expense), false, callback);
+    }
+
+    /**
+     * @see DB#getExpensesForDay(Date)
+     */
+    @NonNull
+    public Future<List<Expense>> getExpensesForDay(@NonNull final Date date, @Nullable Callback<List<Expense>> callback)
+    {
+        return execute(db -> db.getExpensesForDay(date), callback);
+    }
+
+    /**
+     * @see DB#getExpensesForMonth(Date)
+     */
+    @NonNull
+    public Future<List<Expense>> getExpensesForMonth(@NonNull final Date firstDate, @Nullable Callback<List<Expense>> callback)
+    {
+        return execute(db -> db.getExpensesForMonth(firstDate), callback);
+    }
+
+    /**
+     * @see DB#getBalanceForDay(Date)
+     */
+    @NonNull
+    public Future<Money> getBalanceForDay(@NonNull final Date day, @Nullable Callback<Money> callback)
+    {
+        return execute(db -> db.getBalanceForDay(day), callback);
+    }
+
+    /**
+     * @see DB#addRecurringExpense(RecurringExpense)
+     */
+    @NonNull
+    public Future<Boolean> addRecurringExpense(@NonNull final RecurringExpense expense, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.addRecurringExpense(expense), false, callback);
+    }
+
+    /**
+     * @see DB#updateRecurringExpense(RecurringExpense)
+     */
+    @NonNull
+    public Future<Boolean> updateRecurringExpense(@NonNull final RecurringExpense expense, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.updateRecurringExpense(expense), false, callback);
+    }
+
+    /**
+     * @see DB#deleteRecurringExpense(RecurringExpense)
+     */
+    @NonNull
+    public Future<Boolean> deleteRecurringExpense(@NonNull final RecurringExpense expense, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.deleteRecurringExpense(expense), false, callback);
+    }
+
+    /**
+     * @see DB#restoreRecurringExpense(RecurringExpense)
+     */
+    @NonNull
+    public Future<Boolean> restoreRecurringExpense(@NonNull final RecurringExpense expense, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.restoreRecurringExpense(expense), false, callback);
+    }
+
+    /**
+     * @see DB#purgeDeletedRecurringExpense(RecurringExpense)
+     */
+    @NonNull
+    public Future<Void> purgeDeletedRecurringExpense(@NonNull final RecurringExpense expense)
+    {
+        return execute(db -> {
+            db.purgeDeletedRecurringExpense(expense);
+            return null;
+        }, null);
+    }
+
+    /**
+     * @see DB#purgeDeletedRecurringExpenses()
+     */
+    @NonNull
+    public Future<Void> purgeDeletedRecurringExpenses()
+    {
+        return execute(db -> {
+            db.purgeDeletedRecurringExpenses();
+            return null;
+        }, null);
+    }
+
+    /**
+     * @see DB#onTimeZoneChanged()
+     */
+    @NonNull
+    public Future<Void> onTimeZoneChanged()
+    {
+        return execute(db -> {
+            db.onTimeZoneChanged();
+            return null;
+        }, null);
+    }
+
+    /**
+     * @see DB#hasExpensesForRecurringExpenseBeforeDate(RecurringExpense, Date)
+     */
+    @NonNull
+    public Future<Boolean> hasExpensesForRecurringExpenseBeforeDate(@NonNull final RecurringExpense expense, @NonNull final Date toDate, @Nullable Callback<Boolean> callback)
+    {
+        return execute(db -> db.hasExpensesForRecurringExpenseBeforeDate(expense, toDate), false, callback);
+    }
+
+// ------------------------------------->
+
+    /**
+     * An operation to run against the DB on the DB thread
+     *
+     * @param <T> type of the result
+     */
+    public interface Operation<T>
+    {
+        @WorkerThread
+        T execute(@NonNull DB db);
+    }
+
+    /**
+     * Callback that receives the result of an operation on the main thread. Operations returning a
+     * {@link Boolean} receive false on error, other ones receive null.
+     *
+     * @param <T> type of the result
+     */
+    public interface Callback<T>
+    {
+        @MainThread
+        void onResult(T result);
+    }
+
+// ------------------------------------->
+
+    private static AsyncDB instance;
+
+    /**
+     * Instance accessor, for app wide operations: this instance is never closed
+     *
+     * @param context
+     * @return
+     */
+    public synchronized static AsyncDB getInstance(@NonNull Context context)
+    {
+        if( instance == null )
+        {
+            instance = new AsyncDB(context);
+        }
+
+        return instance;
+    }
+}
@@ -24,21 +24,28 @@ import android.database.sqlite.SQLiteException;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.collection.LongSparseArray;
 import androidx.core.util.Pair;
 
-import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
 import com.benoitletondor.easybudgetapp.helper.DateHelper;
+import com.benoitletondor.easybudgetapp.helper.DateMath;
 import com.benoitletondor.easybudgetapp.helper.Logger;
 import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
+import com.benoitletondor.easybudgetapp.model.RecurrenceEngine;
 import com.benoitletondor.easybudgetapp.model.RecurringExpense;
 import com.benoitletondor.easybudgetapp.model.RecurringExpenseType;
 
 import org.json.JSONException;
 
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Database wrapper and DAO
@@ -48,7 +55,25 @@ import java.util.List;
 public final class DB
 {
     /**
-     * The SQLLite DB
+     * Prefix of the recurring expense columns in {@link #EXPENSE_WITH_RECURRING_EXPENSE_QUERY}
+     */
+    private static final String RECURRING_COLUMN_PREFIX = "recurring_";
+    /**
+     * Select query of expenses joined with their recurring expense, whose columns are prefixed by {@link #RECURRING_COLUMN_PREFIX}
+     */
+    private static final String EXPENSE_WITH_RECURRING_EXPENSE_QUERY = "SELECT " + SQLiteDBHelper.TABLE_EXPENSE + ".*, "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_DB_ID) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_TITLE) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_AMOUNT) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_RECURRING_DATE) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_TYPE) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_MODIFIED) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_START_DATE) + ", "
+        + getRecurringColumnSelection(SQLiteDBHelper.COLUMN_RECURRING_END_DATE)
+        + " FROM " + SQLiteDBHelper.TABLE_EXPENSE + " LEFT JOIN " + SQLiteDBHelper.TABLE_RECURRING_EXPENSE + " rec ON rec." + SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " = " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID;
+
+    /**
+     * The SQLLite DB, shared by all instances (should not be closed)
      */
     private final SQLiteDatabase database;
     /**
@@ -59,7 +84,7 @@ public final class DB
 // -------------------------------------------->
 
     /**
-     * Create and open a new DB
+     * Create a new DB using the connection shared by the whole app
      *
      * @param context
      * @throws SQLiteException
@@ -67,23 +92,7 @@ public final class DB
     public DB(@NonNull Context context) throws SQLiteException
     {
         this.context = context.getApplicationContext();
-        SQLiteDBHelper databaseHelper = new SQLiteDBHelper(this.context);
-		database = databaseHelper.getWritableDatabase();
-	}
-
-    /**
-     * Close the DB, no call to other methods should be made after this method
-     */
-    public void close()
-    {
-        try
-        {
-            database.close();
-        }
-        catch (Exception e)
-        {
-            Logger.error("Error while closing SQLite DB", e);
-        }
+        database = SQLiteDBHelper.getInstance(this.context).getWritableDatabase();
     }
 
     /**
@@ -94,12 +103,14 @@ public final class DB
     {
         database.delete(SQLiteDBHelper.TABLE_EXPENSE, null, null);
         database.delete(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, null);
+        database.delete(SQLiteDBHelper.TABLE_BALANCE, null, null);
     }
 
 // -------------------------------------------->
 
     /**
-     * Add or update a one time expense into DB
+     * Add or update an expense into DB. For an occurrence of a recurring expense, it will be stored
+     * as an exception replacing the computed occurrence.
      *
      * @param expense
      * @param forcePersist if true, it will be an insert even if an id already exists
@@ -107,36 +118,89 @@ public final class DB
      */
     public boolean persistExpense(@NonNull Expense expense, boolean forcePersist)
     {
-        if( expense.getId() != null && !forcePersist )
+        // Cache loads wait until the cache is updated with the changes
+        final DBCache cache = DBCache.getInstance(context);
+        cache.onWriteStarted();
+        try
         {
-            int rowsAffected = database.update(SQLiteDBHelper.TABLE_EXPENSE, generateContentValuesForExpense(expense), SQLiteDBHelper.COLUMN_EXPENSE_DB_ID+"="+expense.getId(), null);
-            if( rowsAffected > 0 )
+            if( expense.isRecurring() )
             {
-                // Refresh cache for day
-                DBCache.getInstance(context).wipeAll(); // FIXME we should refresh for the new expense date & the old one
+                return persistRecurringExpenseOccurrence(expense, false);
             }
 
-            return rowsAffected == 1;
-        }
-        else
-        {
-            long id = database.insert(SQLiteDBHelper.TABLE_EXPENSE, null, generateContentValuesForExpense(expense));
+            final TreeMap<Long, Long> balanceDeltas = new TreeMap<>();
+            final ContentValues values = generateContentValuesForExpense(expense);
+            DailyBalanceTable.addDelta(balanceDeltas, expense.getDate().getTime(), values.getAsLong(SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT));
 
-            if( id > 0 )
+            if( expense.getId() != null && !forcePersist )
             {
-                // Refresh cache for day
-                DBCache.getInstance(context).refreshForDay(this, expense.getDate());
+                int rowsAffected = 0;
+
+                database.beginTransaction();
+                try
+                {
+                    DailyBalanceTable.collectDeltas(database, getExpenseIdClause(expense.getId()), balanceDeltas, -1);
+
+                    rowsAffected = database.update(SQLiteDBHelper.TABLE_EXPENSE, values, SQLiteDBHelper.COLUMN_EXPENSE_DB_ID+"="+expense.getId(), null);
+                    if( rowsAffected == 1 )
+                    {
+                        DailyBalanceTable.applyDeltas(database, balanceDeltas);
+                        database.setTransactionSuccessful();
+                    }
+                }
+                finally
+                {
+                    database.endTransaction();
+                }
 
-                expense.setId(id);
-                return true;
+                if( rowsAffected == 1 )
+                {
+                    // Refresh cache for both the old and the new date of the expense
+                    DBCache.getInstance(context).onExpensesChanged(this, balanceDeltas);
+                }
+
+                return rowsAffected == 1;
             }
-        }
+            else
+            {
+                long id;
+
+                database.beginTransaction();
+                try
+                {
+                    id = database.insert(SQLiteDBHelper.TABLE_EXPENSE, null, values);
+                    if( id > 0 )
+                    {
+                        DailyBalanceTable.applyDeltas(database, balanceDeltas);
+                        database.setTransactionSuccessful();
+                    }
+                }
+                finally
+                {
+                    database.endTransaction();
+                }
+
+                if( id > 0 )
+                {
+                    // Refresh cache for day
+                    DBCache.getInstance(context).onExpensesChanged(this, balanceDeltas);
 
-        return false;
+                    expense.setId(id);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+        finally
+        {
+            cache.onWriteFinished();
+        }
     }
 
     /**
-     * Add or update a one time expense into DB
+     * Add or update an expense into DB. For an occurrence of a recurring expense, it will be stored
+     * as an exception replacing the computed occurrence.
      *
      * @param expense
      * @return true on success, false on error
@@ -154,25 +218,38 @@ public final class DB
      */
     public boolean hasExpensesForDay(@NonNull Date day)
     {
-        Pair<Long, Long> range = DateHelper.getTimestampRangeForDay(day);
-        Date gmt = DateHelper.cleanGMTDate(day);
+        final int epochDay = DateHelper.getEpochDay(day);
 
         // Check cache
-        Boolean hasExpensesCached = DBCache.getInstance(context).hasExpensesForDay(gmt);
+        Boolean hasExpensesCached = DBCache.getInstance(context).hasExpensesForDay(epochDay);
         if( hasExpensesCached != null )
         {
             return hasExpensesCached;
         }
 
-        try ( Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + SQLiteDBHelper.TABLE_EXPENSE + " WHERE " + SQLiteDBHelper.COLUMN_EXPENSE_DATE + " >= " + range.first + " AND " + SQLiteDBHelper.COLUMN_EXPENSE_DATE + " <= " + range.second, null) )
+        final long startNanos = System.nanoTime();
+        try
         {
+            try ( Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + SQLiteDBHelper.TABLE_EXPENSE + " WHERE " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_DAY + " = " + epochDay + " AND " + SQLiteDBHelper.CONDITION_DISPLAYED_EXPENSE, null) )
+            {
+                if( cursor.moveToFirst() && cursor.getInt(0) > 0 )
+                {
+                    return true;
+                }
+            }
 
-            return cursor.moveToFirst() && cursor.getInt(0) > 0;
+            List<Expense> occurrences = new ArrayList<>();
+            addRecurringExpensesOccurrences(occurrences, DateMath.getDayStart(epochDay), DateMath.getDayStart(epochDay + 1) - 1, new LongSparseArray<>());
+            return !occurrences.isEmpty();
+        }
+        finally
+        {
+            DBMetrics.recordDBDayQuery(startNanos);
         }
     }
 
     /**
-     * Get all one time expense for a day
+     * Get all expenses for a day, including occurrences of recurring expenses
      *
      * @param date
      * @param fromCache should we use cache or not
@@ -181,50 +258,34 @@ public final class DB
     @NonNull
     protected List<Expense> getExpensesForDay(@NonNull Date date, boolean fromCache)
     {
-        Pair<Long, Long> range = DateHelper.getTimestampRangeForDay(date);
-        Date gmt = DateHelper.cleanGMTDate(date);
+        final int epochDay = DateHelper.getEpochDay(date);
 
         // Check cache
         if( fromCache )
         {
-            List<Expense> cachedExpenses = DBCache.getInstance(context).getExpensesForDay(gmt);
+            List<Expense> cachedExpenses = DBCache.getInstance(context).getExpensesForDay(epochDay);
             if( cachedExpenses != null )
             {
                 return cachedExpenses;
             }
         }
 
-        Cursor cursor = null;
-        try
-        {
-            List<Expense> expenses = new ArrayList<>();
+        final long startNanos = System.nanoTime();
+        final LongSparseArray<RecurringExpense> recurringExpenses = new LongSparseArray<>();
 
-            cursor = database.query(SQLiteDBHelper.TABLE_EXPENSE, null, SQLiteDBHelper.COLUMN_EXPENSE_DATE + " >= " + range.first + " AND " + SQLiteDBHelper.COLUMN_EXPENSE_DATE + " <= " + range.second, null, null, null, null, null);
-            while( cursor.moveToNext() )
-            {
-                try
-                {
-                    expenses.add(ExpenseFromCursor(cursor, getRecurringExpenseForExpenseCursor(cursor)));
-                }
-                catch (Exception e)
-                {
-                    Logger.error(false, "Error occurred querying DB for expense for a day", e);
-                }
-            }
+        List<Expense> expenses = queryExpenses(SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_DAY + " = " + epochDay, recurringExpenses);
+        addRecurringExpensesOccurrences(expenses, DateMath.getDayStart(epochDay), DateMath.getDayStart(epochDay + 1) - 1, recurringExpenses);
 
-            return expenses;
-        }
-        finally
+        if( fromCache )
         {
-            if( cursor != null )
-            {
-                cursor.close();
-            }
+            DBMetrics.recordDBDayQuery(startNanos);
         }
+
+        return expenses;
     }
 
     /**
-     * Get all one time expense for a day
+     * Get all expenses for a day, including occurrences of recurring expenses
      *
      * @param date
      * @return
@@ -236,7 +297,7 @@ public final class DB
     }
 
     /**
-     * Get all the expenses for the given month ordered by date
+     * Get all the expenses for the given month ordered by date, including occurrences of recurring expenses
      *
      * @param firstDate first day of the month at 00:00:000
      * @return expenses for the given month
@@ -244,42 +305,16 @@ public final class DB
     @NonNull
     public List<Expense> getExpensesForMonth(@NonNull Date firstDate)
     {
-        Pair<Long, Long> firstDateRange = DateHelper.getTimestampRangeForDay(firstDate);
+        final int firstDay = DateHelper.getEpochDay(firstDate);
+        final int lastDay = DateMath.getFirstEpochDayOfMonth(DateMath.getEpochMonth(firstDay) + 1) - 1;
 
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(firstDate);
-        cal.add(Calendar.MONTH, 1);
-        cal.add(Calendar.DAY_OF_MONTH, -1);
-
-        Pair<Long, Long> lastDateRange = DateHelper.getTimestampRangeForDay(cal.getTime());
-
-        Cursor cursor = null;
-        try
-        {
-            List<Expense> expenses = new ArrayList<>();
+        final LongSparseArray<RecurringExpense> recurringExpenses = new LongSparseArray<>();
 
-            cursor = database.query(SQLiteDBHelper.TABLE_EXPENSE, null, SQLiteDBHelper.COLUMN_EXPENSE_DATE + " >= " + firstDateRange.first + " AND " + SQLiteDBHelper.COLUMN_EXPENSE_DATE + " <= " + lastDateRange.second+" ORDER BY "+SQLiteDBHelper.COLUMN_EXPENSE_DATE, null, null, null, null, null);
-            while( cursor.moveToNext() )
-            {
-                try
-                {
-                    expenses.add(ExpenseFromCursor(cursor, getRecurringExpenseForExpenseCursor(cursor)));
-                }
-                catch (Exception e)
-                {
-                    Logger.error(false, "Error occurred querying DB for expense for a month", e);
-                }
-            }
+        List<Expense> expenses = queryExpenses(SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_DAY + " BETWEEN " + firstDay + " AND " + lastDay, recurringExpenses);
+        addRecurringExpensesOccurrences(expenses, DateMath.getDayStart(firstDay), DateMath.getDayStart(lastDay + 1) - 1, recurringExpenses);
+        Collections.sort(expenses, (expense1, expense2) -> expense1.getDate().compareTo(expense2.getDate()));
 
-            return expenses;
-        }
-        finally
-        {
-            if( cursor != null )
-            {
-                cursor.close();
-            }
-        }
+        return expenses;
     }
 
     /**
@@ -289,32 +324,38 @@ public final class DB
      * @param fromCache should we use DBCache
      * @return
      */
-    protected double getBalanceForDay(@NonNull Date day, boolean fromCache)
+    @NonNull
+    protected Money getBalanceForDay(@NonNull Date day, boolean fromCache)
     {
-        Pair<Long, Long> range = DateHelper.getTimestampRangeForDay(day);
-        Date gmt = DateHelper.cleanGMTDate(day);
+        final int epochDay = DateHelper.getEpochDay(day);
 
         // Check cache
         if( fromCache )
         {
-            Double cachedBalance = DBCache.getInstance(context).getBalanceForDay(gmt);
+            Money cachedBalance = DBCache.getInstance(context).getBalanceForDay(epochDay);
             if( cachedBalance != null )
             {
                 return cachedBalance;
             }
         }
 
-        try ( Cursor cursor = database.rawQuery("SELECT SUM(" + SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT + ") FROM " + SQLiteDBHelper.TABLE_EXPENSE + " WHERE " + SQLiteDBHelper.COLUMN_EXPENSE_DATE + " <= " + range.second, null) )
-        {
+        final long startNanos = System.nanoTime();
+        final long dayKey = DailyBalanceTable.getDayKeyForEpochDay(epochDay);
+        long balance = DailyBalanceTable.getBalance(database, dayKey);
 
-            if ( cursor.moveToFirst() )
-            {
-                int value = cursor.getInt(0);
-                return (double) value / 100.d;
-            }
+        // Add occurrences of recurring expenses, that are not part of the balance table
+        final long endOfDay = DateMath.getDayStart(epochDay + 1) - 1;
+        for(RecurringExpense recurringExpense : getAllRecurringExpenses())
+        {
+            balance += recurringExpense.getAmount().getCents() * RecurrenceEngine.countOccurrencesUntil(recurringExpense, endOfDay);
+        }
 
-            return 0;
+        if( fromCache )
+        {
+            DBMetrics.recordDBDayQuery(startNanos);
         }
+
+        return Money.ofCents(balance);
     }
 
     /**
@@ -323,28 +364,175 @@ public final class DB
      * @param day
      * @return
      */
-    public double getBalanceForDay(@NonNull Date day)
+    @NonNull
+    public Money getBalanceForDay(@NonNull Date day)
     {
         return getBalanceForDay(day, true);
     }
 
     /**
-     * Add a recurring expense
+     * Get the balance of every day of the given month. Computed with a running sum over the month
+     * instead of one lookup per day.
+     *
+     * @param epochMonth the month (see {@link DateHelper#getEpochMonth(int, int)})
+     * @return balances in cents of each day of the month, indexed by day of month starting at 0
+     */
+    @NonNull
+    protected long[] getBalancesForMonth(int epochMonth)
+    {
+        final int firstDay = DateHelper.getFirstEpochDayOfMonth(epochMonth);
+
+        final long[] days = new long[DateHelper.getFirstEpochDayOfMonth(epochMonth + 1) - firstDay];
+        for (int i = 0; i < days.length; i++)
+        {
+            days[i] = DailyBalanceTable.getDayKeyForEpochDay(firstDay + i);
+        }
+
+        final long[] balances = DailyBalanceTable.getBalances(database, days);
+
+        // Add occurrences of recurring expenses: the ones before the month, then the ones of each day.
+        // Occurrences are local timestamps, so the month is bounded by its local days
+        final long[] recurringDeltas = new long[days.length];
+        final long startOfMonth = DateMath.getDayStart(firstDay);
+        final long endOfMonth = DateMath.getDayStart(firstDay + days.length) - 1;
+        long recurringBalance = 0;
+        for(RecurringExpense recurringExpense : getAllRecurringExpenses())
+        {
+            final long amount = recurringExpense.getAmount().getCents();
+            recurringBalance += amount * RecurrenceEngine.countOccurrencesUntil(recurringExpense, startOfMonth - 1);
+
+            for(Date occurrenceDate : RecurrenceEngine.getOccurrences(recurringExpense, startOfMonth, endOfMonth))
+            {
+                // Occurrence counts starting from the first day whose key is after its own
+                int index = Arrays.binarySearch(days, DailyBalanceTable.getDayKey(occurrenceDate.getTime()));
+                if( index < 0 )
+                {
+                    index = -index - 1;
+                }
+
+                if( index < days.length )
+                {
+                    recurringDeltas[index] += amount;
+                }
+            }
+        }
+
+        for (int i = 0; i < days.length; i++)
+        {
+            recurringBalance += recurringDeltas[i];
+            balances[i] += recurringBalance;
+        }
+
+        return balances;
+    }
+
+    /**
+     * Add a recurring expense. Its occurrences are computed on demand, so this doesn't insert any expense.
      *
      * @param expense
      * @return true on success, false on error
      */
     public boolean addRecurringExpense(@NonNull RecurringExpense expense)
     {
-        long id = database.insert(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, generateContentValuesForRecurringExpense(expense));
-
-        if( id > 0 )
+        // Cache loads wait until the cache is updated with the changes
+        final DBCache cache = DBCache.getInstance(context);
+        cache.onWriteStarted();
+        try
         {
+            long id = database.insert(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, generateContentValuesForRecurringExpense(expense));
+            if( id <= 0 )
+            {
+                return false;
+            }
+
             expense.setId(id);
+            DBCache.getInstance(context).onRecurringExpenseChanged(this);
+
             return true;
         }
+        finally
+        {
+            cache.onWriteFinished();
+        }
+    }
 
-        return false;
+    /**
+     * Recompute the day of every expense and the balance table after the timezone of the device
+     * changed. Days of expenses and of the occurrences replaced by exceptions are local days, so
+     * deltas computed with the new timezone wouldn't match the stored ones otherwise. Must be called
+     * after {@link DateMath#onTimeZoneChanged()}.
+     */
+    public void onTimeZoneChanged()
+    {
+        // Cache loads wait until the cache is updated with the changes
+        final DBCache cache = DBCache.getInstance(context);
+        cache.onWriteStarted();
+        try
+        {
+            database.beginTransaction();
+            try
+            {
+                SQLiteDBHelper.backfillExpenseDays(database);
+                DailyBalanceTable.rebuild(database);
+                database.setTransactionSuccessful();
+            }
+            finally
+            {
+                database.endTransaction();
+            }
+
+            cache.wipeAll();
+        }
+        finally
+        {
+            cache.onWriteFinished();
+        }
+    }
+
+    /**
+     * Update a recurring expense, typically to change its start or end date
+     *
+     * @param expense
+     * @return true on success, false on error
+     */
+    public boolean updateRecurringExpense(@NonNull RecurringExpense expense)
+    {
+        // Cache loads wait until the cache is updated with the changes
+        final DBCache cache = DBCache.getInstance(context);
+        cache.onWriteStarted();
+        try
+        {
+            final TreeMap<Long, Long> balanceDeltas = new TreeMap<>();
+            final String exceptionsClause = getRecurringExpenseExceptionsClause(expense.getId());
+
+            database.beginTransaction();
+            try
+            {
+                // Exceptions that are moved in or out of the bounds of the recurring expense change the balance
+                DailyBalanceTable.collectDeltas(database, exceptionsClause, balanceDeltas, -1);
+
+                if( database.update(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, generateContentValuesForRecurringExpense(expense), SQLiteDBHelper.COLUMN_RECURRING_DB_ID + "=" + expense.getId(), null) != 1 )
+                {
+                    return false;
+                }
+
+                DailyBalanceTable.collectDeltas(database, exceptionsClause, balanceDeltas, 1);
+                DailyBalanceTable.applyDeltas(database, balanceDeltas);
+                database.setTransactionSuccessful();
+            }
+            finally
+            {
+                database.endTransaction();
+            }
+
+            DBCache.getInstance(context).onRecurringExpenseChanged(this);
+
+            return true;
+        }
+        finally
+        {
+            cache.onWriteFinished();
+        }
     }
 
     /**
@@ -360,7 +548,7 @@ public final class DB
         {
             List<RecurringExpense> expenses = new ArrayList<>();
 
-            cursor = database.query(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, null, null, null, null, null, null);
+            cursor = database.query(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, SQLiteDBHelper.CONDITION_ACTIVE_RECURRING_EXPENSE, null, null, null, null, null);
             while( cursor.moveToNext() )
             {
                 expenses.add(recurringExpenseFromCursor(cursor));
@@ -378,227 +566,377 @@ public final class DB
     }
 
     /**
-     * Delete this recurring expense
+     * Delete this recurring expense and all its occurrences. The recurring expense and its exceptions
+     * are only marked as deleted so that it can be restored using {@link #restoreRecurringExpense(RecurringExpense)},
+     * until they are removed by {@link #purgeDeletedRecurringExpense(RecurringExpense)}.
      *
      * @param recurringExpense
      * @return true on success, false on error
      */
     public boolean deleteRecurringExpense(@NonNull RecurringExpense recurringExpense)
     {
-        return database.delete(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, SQLiteDBHelper.COLUMN_RECURRING_DB_ID +"="+ recurringExpense.getId(), null) > 0;
+        return setRecurringExpenseDeleted(recurringExpense, true);
     }
 
     /**
-     * Delete this expense
+     * Restore a recurring expense deleted with {@link #deleteRecurringExpense(RecurringExpense)}
+     * and not purged yet
      *
-     * @param expense
+     * @param recurringExpense
      * @return true on success, false on error
      */
-    public boolean deleteExpense(@NonNull Expense expense)
+    public boolean restoreRecurringExpense(@NonNull RecurringExpense recurringExpense)
     {
-        boolean delete = database.delete(SQLiteDBHelper.TABLE_EXPENSE, SQLiteDBHelper.COLUMN_EXPENSE_DB_ID+"="+expense.getId(), null) > 0;
-
-        if( delete )
-        {
-            // Refresh cache for day
-            DBCache.getInstance(context).refreshForDay(this, expense.getDate());
-        }
-
-        return delete;
+        return setRecurringExpenseDeleted(recurringExpense, false);
     }
 
     /**
-     * Delete all expense for this recurring expense
+     * Definitely remove a deleted recurring expense and its exceptions
      *
      * @param recurringExpense
-     * @return true on success, false on error
      */
-    public boolean deleteAllExpenseForRecurringExpense(@NonNull RecurringExpense recurringExpense)
+    public void purgeDeletedRecurringExpense(@NonNull RecurringExpense recurringExpense)
     {
-        boolean deleted = database.delete(SQLiteDBHelper.TABLE_EXPENSE, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID +"="+ recurringExpense.getId(), null) > 0;
-
-        if( deleted )
-        {
-            DBCache.getInstance(context).wipeAll();
-        }
+        purgeDeletedRecurringExpenses(SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " = " + recurringExpense.getId() + " AND " + SQLiteDBHelper.COLUMN_RECURRING_DELETED + " = 1");
+    }
 
-        return deleted;
+    /**
+     * Definitely remove all deleted recurring expenses and their exceptions. Should only be called
+     * when no delete can be cancelled anymore (at app startup for example).
+     */
+    public void purgeDeletedRecurringExpenses()
+    {
+        purgeDeletedRecurringExpenses(SQLiteDBHelper.COLUMN_RECURRING_DELETED + " = 1");
     }
 
     /**
-     * Get all expenses associated with this recurring expense
+     * Delete this expense. For an occurrence of a recurring expense, it will be stored as a deleted
+     * occurrence.
      *
-     * @param recurringExpense
-     * @return
+     * @param expense
+     * @return true on success, false on error
      */
-    public List<Expense> getAllExpenseForRecurringExpense(@NonNull RecurringExpense recurringExpense)
+    public boolean deleteExpense(@NonNull Expense expense)
     {
-        Cursor cursor = null;
+        // Cache loads wait until the cache is updated with the changes
+        final DBCache cache = DBCache.getInstance(context);
+        cache.onWriteStarted();
         try
         {
-            List<Expense> expenses = new ArrayList<>();
+            if( expense.isRecurring() )
+            {
+                return persistRecurringExpenseOccurrence(expense, true);
+            }
 
-            cursor = database.query(SQLiteDBHelper.TABLE_EXPENSE, null, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID +"="+ recurringExpense.getId(), null, null, null, null, null);
-            while( cursor.moveToNext() )
+            final TreeMap<Long, Long> balanceDeltas = new TreeMap<>();
+            boolean deleted;
+
+            database.beginTransaction();
+            try
             {
-                expenses.add(ExpenseFromCursor(cursor, recurringExpense));
+                DailyBalanceTable.collectDeltas(database, getExpenseIdClause(expense.getId()), balanceDeltas, -1);
+
+                deleted = database.delete(SQLiteDBHelper.TABLE_EXPENSE, SQLiteDBHelper.COLUMN_EXPENSE_DB_ID+"="+expense.getId(), null) > 0;
+                if( deleted )
+                {
+                    DailyBalanceTable.applyDeltas(database, balanceDeltas);
+                    database.setTransactionSuccessful();
+                }
+            }
+            finally
+            {
+                database.endTransaction();
             }
 
-            return expenses;
+            if( deleted )
+            {
+                // Refresh cache for day
+                DBCache.getInstance(context).onExpensesChanged(this, balanceDeltas);
+            }
+
+            return deleted;
         }
         finally
         {
-            if( cursor != null )
-            {
-                cursor.close();
-            }
+            cache.onWriteFinished();
         }
     }
 
     /**
-     * Delete all expense for this recurring expense from the given date (not included)
+     * Check if there are occurrences before this date for the given recurring expense
      *
      * @param recurringExpense
-     * @param fromDate
-     * @return true on success, false on error
+     * @param toDate
+     * @return
      */
-    public boolean deleteAllExpenseForRecurringExpenseFromDate(@NonNull RecurringExpense recurringExpense, @NonNull Date fromDate)
+    public boolean hasExpensesForRecurringExpenseBeforeDate(@NonNull RecurringExpense recurringExpense, @NonNull Date toDate)
     {
-        boolean deleted = database.delete(SQLiteDBHelper.TABLE_EXPENSE, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID +"="+ recurringExpense.getId()+" AND "+SQLiteDBHelper.COLUMN_EXPENSE_DATE+">"+fromDate.getTime(), null) > 0;
+        return RecurrenceEngine.countOccurrencesUntil(recurringExpense, DateHelper.cleanDate(toDate).getTime() - 1) > 0;
+    }
 
-        if( deleted )
+    /**
+     * Find the recurring expense for the given ID
+     *
+     * @param id
+     * @return recurring expense if found, null otherwise
+     */
+    @Nullable
+    public RecurringExpense findRecurringExpenseForId(long id)
+    {
+        try ( Cursor cursor = database.query(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " = " + id + " AND " + SQLiteDBHelper.CONDITION_ACTIVE_RECURRING_EXPENSE, null, null, null, null, "1") )
         {
-            DBCache.getInstance(context).wipeAll();
-        }
 
-        return  deleted;
+            if ( cursor.moveToFirst() )
+            {
+                return recurringExpenseFromCursor(cursor);
+            }
+
+            return null;
+        }
     }
 
+// -------------------------------------------->
+
     /**
-     * Retrieve all expenses associated with this recurring expense happening after the given date (not included)
+     * Mark the recurring expense as deleted or not, updating the balance of its exceptions
      *
      * @param recurringExpense
-     * @param fromDate
-     * @return
+     * @param deleted
+     * @return true on success, false on error
      */
-    public List<Expense> getAllExpensesForRecurringExpenseFromDate(@NonNull RecurringExpense recurringExpense, @NonNull Date fromDate)
+    private boolean setRecurringExpenseDeleted(@NonNull RecurringExpense recurringExpense, boolean deleted)
     {
-        fromDate = DateHelper.cleanDate(fromDate);
-
-        Cursor cursor = null;
+        // Cache loads wait until the cache is updated with the changes
+        final DBCache cache = DBCache.getInstance(context);
+        cache.onWriteStarted();
         try
         {
-            List<Expense> expenses = new ArrayList<>();
+            final TreeMap<Long, Long> balanceDeltas = new TreeMap<>();
+            final String exceptionsClause = getRecurringExpenseExceptionsClause(recurringExpense.getId());
 
-            cursor = database.query(SQLiteDBHelper.TABLE_EXPENSE, null, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID +"="+ recurringExpense.getId()+" AND "+SQLiteDBHelper.COLUMN_EXPENSE_DATE+">"+fromDate.getTime(), null, null, null, null, null);
-            while( cursor.moveToNext() )
+            final ContentValues values = new ContentValues();
+            values.put(SQLiteDBHelper.COLUMN_RECURRING_DELETED, deleted ? 1 : 0);
+
+            database.beginTransaction();
+            try
             {
-                expenses.add(ExpenseFromCursor(cursor, recurringExpense));
+                // Only valid exceptions are collected, so deltas are collected while the recurring expense is not deleted
+                if( deleted )
+                {
+                    DailyBalanceTable.collectDeltas(database, exceptionsClause, balanceDeltas, -1);
+                }
+
+                if( database.update(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, values, SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " = " + recurringExpense.getId() + " AND " + SQLiteDBHelper.COLUMN_RECURRING_DELETED + " = " + (deleted ? 0 : 1), null) != 1 )
+                {
+                    return false;
+                }
+
+                if( !deleted )
+                {
+                    DailyBalanceTable.collectDeltas(database, exceptionsClause, balanceDeltas, 1);
+                }
+
+                DailyBalanceTable.applyDeltas(database, balanceDeltas);
+                database.setTransactionSuccessful();
+            }
+            finally
+            {
+                database.endTransaction();
             }
 
-            return expenses;
+            DBCache.getInstance(context).onRecurringExpenseChanged(this);
+
+            return true;
         }
         finally
         {
-            if( cursor != null )
-            {
-                cursor.close();
-            }
+            cache.onWriteFinished();
         }
     }
 
     /**
-     * Delete all expense for this recurring expense before the given date (excluded)
+     * Remove the deleted recurring expenses matching the given clause and their exceptions. They
+     * are already ignored so the balance doesn't change.
      *
-     * @param recurringExpense
-     * @param toDate
-     * @return true on success, false on error
+     * @param recurringExpenseClause where clause on the recurring expense table
      */
-    public boolean deleteAllExpenseForRecurringExpenseBeforeDate(@NonNull RecurringExpense recurringExpense, @NonNull Date toDate)
+    private void purgeDeletedRecurringExpenses(@NonNull String recurringExpenseClause)
     {
-        boolean deleted = database.delete(SQLiteDBHelper.TABLE_EXPENSE, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID +"="+ recurringExpense.getId()+" AND "+SQLiteDBHelper.COLUMN_EXPENSE_DATE+"<"+toDate.getTime(), null) > 0;
-
-        if( deleted )
+        database.beginTransaction();
+        try
         {
-            DBCache.getInstance(context).wipeAll();
+            database.delete(SQLiteDBHelper.TABLE_EXPENSE, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID + " IN (SELECT " + SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " FROM " + SQLiteDBHelper.TABLE_RECURRING_EXPENSE + " WHERE " + recurringExpenseClause + ")", null);
+            database.delete(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, recurringExpenseClause, null);
+            database.setTransactionSuccessful();
+        }
+        finally
+        {
+            database.endTransaction();
         }
-
-        return deleted;
     }
 
     /**
-     * Check if there are expenses before this date for the given recurring expense
+     * Store the given occurrence of a recurring expense as an exception, replacing any existing
+     * exception for this occurrence. If the occurrence isn't modified, the existing exception is
+     * just removed.
      *
-     * @param recurringExpense
-     * @param toDate
-     * @return
+     * @param expense occurrence of a recurring expense
+     * @param deleted should the occurrence be stored as deleted
+     * @return true on success, false on error
      */
-    public boolean hasExpensesForRecurringExpenseBeforeDate(@NonNull RecurringExpense recurringExpense, @NonNull Date toDate)
+    private boolean persistRecurringExpenseOccurrence(@NonNull Expense expense, boolean deleted)
     {
-        toDate = DateHelper.cleanDate(toDate);
+        final RecurringExpense recurringExpense = expense.getAssociatedRecurringExpense();
+        assert recurringExpense != null;
+
+        final Date occurrenceDate = expense.getOccurrenceDate() != null ? expense.getOccurrenceDate() : expense.getDate();
+        final int occurrenceDay = DateHelper.getEpochDay(occurrenceDate);
+
+        // An occurrence identical to the computed one doesn't need to be stored
+        final boolean storeException = deleted
+            || !expense.getTitle().equals(recurringExpense.getTitle())
+            || !expense.getAmount().equals(recurringExpense.getAmount())
+            || DateHelper.getEpochDay(expense.getDate()) != occurrenceDay;
+
+        // Occurrence dates are stored as local timestamps: bound them by the local day
+        final String occurrenceClause = getRecurringExpenseExceptionsClause(recurringExpense.getId())
+            + " AND " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE + " >= " + DateMath.getDayStart(occurrenceDay)
+            + " AND " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE + " < " + DateMath.getDayStart(occurrenceDay + 1);
 
-        try ( Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + SQLiteDBHelper.TABLE_EXPENSE + " WHERE " + SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID + "=" + recurringExpense.getId() + " AND " + SQLiteDBHelper.COLUMN_EXPENSE_DATE + "<" + toDate.getTime() + " LIMIT 1", null) )
+        final TreeMap<Long, Long> balanceDeltas = new TreeMap<>();
+        Long id = null;
+
+        database.beginTransaction();
+        try
         {
+            DailyBalanceTable.collectDeltas(database, occurrenceClause, balanceDeltas, -1);
+            database.delete(SQLiteDBHelper.TABLE_EXPENSE, occurrenceClause, null);
+
+            if( storeException )
+            {
+                final ContentValues values = generateContentValuesForExpense(expense);
+                values.put(SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE, occurrenceDate.getTime());
+                if( deleted )
+                {
+                    values.put(SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT, 0);
+                    values.put(SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DELETED, 1);
+                }
+
+                id = database.insert(SQLiteDBHelper.TABLE_EXPENSE, null, values);
+                if( id <= 0 )
+                {
+                    return false;
+                }
 
-            return cursor.moveToFirst() && cursor.getInt(0) > 0;
+                DailyBalanceTable.collectDeltas(database, getExpenseIdClause(id), balanceDeltas, 1);
+            }
+
+            DailyBalanceTable.applyDeltas(database, balanceDeltas);
+            database.setTransactionSuccessful();
+        }
+        finally
+        {
+            database.endTransaction();
+        }
+
+        if( !deleted )
+        {
+            expense.setId(id);
         }
+
+        // Refresh cache for both the occurrence and the exception dates
+        DBCache.getInstance(context).onExpensesChanged(this, balanceDeltas);
+
+        return true;
     }
 
     /**
-     * Retrieve all expenses associated with this recurring expense happening before the given date
+     * Add to the given list the computed occurrences of all recurring expenses happening between
+     * the given timestamps that are not replaced by an exception
      *
-     * @param recurringExpense
-     * @param toDate
-     * @return
+     * @param expenses list to add the occurrences to
+     * @param from start timestamp (included)
+     * @param to end timestamp (included)
+     * @param recurringExpensesById identity map of the recurring expenses already loaded by this read, by id
      */
-    public List<Expense> getAllExpensesForRecurringExpenseBeforeDate(@NonNull RecurringExpense recurringExpense, @NonNull Date toDate)
+    private void addRecurringExpensesOccurrences(@NonNull List<Expense> expenses, long from, long to, @NonNull LongSparseArray<RecurringExpense> recurringExpensesById)
     {
-        toDate = DateHelper.cleanDate(toDate);
+        final List<RecurringExpense> recurringExpenses = getAllRecurringExpenses();
+        if( recurringExpenses.isEmpty() )
+        {
+            return;
+        }
 
-        Cursor cursor = null;
-        try
+        // Use the instances already loaded so that all expenses of a recurring expense share the same one
+        for (int i = 0; i < recurringExpenses.size(); i++)
         {
-            List<Expense> expenses = new ArrayList<>();
+            RecurringExpense loadedRecurringExpense = recurringExpensesById.get(recurringExpenses.get(i).getId());
+            if( loadedRecurringExpense != null )
+            {
+                recurringExpenses.set(i, loadedRecurringExpense);
+            }
+        }
 
-            cursor = database.query(SQLiteDBHelper.TABLE_EXPENSE, null, SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID +"="+ recurringExpense.getId()+" AND "+SQLiteDBHelper.COLUMN_EXPENSE_DATE+"<"+toDate.getTime(), null, null, null, null, null);
+        // Occurrences replaced by an exception, as recurring expense id / day. Occurrence dates are
+        // stored as local timestamps: bound them by the local days of the range
+        final long exceptionsStart = DateMath.getDayStart(from);
+        final long exceptionsEnd = DateMath.getDayStart(DateHelper.getEpochDay(to) + 1);
+        final Set<Pair<Long, Long>> exceptions = new HashSet<>();
+        try ( Cursor cursor = database.rawQuery("SELECT " + SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID + ", " + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE + " FROM " + SQLiteDBHelper.TABLE_EXPENSE + " WHERE " + SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID + " IS NOT NULL AND " + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE + " >= " + exceptionsStart + " AND " + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE + " < " + exceptionsEnd, null) )
+        {
             while( cursor.moveToNext() )
             {
-                expenses.add(ExpenseFromCursor(cursor, recurringExpense));
+                exceptions.add(new Pair<>(cursor.getLong(0), DailyBalanceTable.getDayKey(cursor.getLong(1))));
             }
-
-            return expenses;
         }
-        finally
+
+        for(RecurringExpense recurringExpense : recurringExpenses)
         {
-            if( cursor != null )
+            for(Date occurrenceDate : RecurrenceEngine.getOccurrences(recurringExpense, from, to))
             {
-                cursor.close();
+                if( !exceptions.contains(new Pair<>(recurringExpense.getId(), DailyBalanceTable.getDayKey(occurrenceDate.getTime()))) )
+                {
+                    expenses.add(new Expense(null, recurringExpense.getTitle(), recurringExpense.getAmount(), occurrenceDate, recurringExpense, occurrenceDate));
+                }
             }
         }
     }
 
     /**
-     * Find the recurring expense for the given ID
+     * Get the selection of a recurring expense column for {@link #EXPENSE_WITH_RECURRING_EXPENSE_QUERY}
      *
-     * @param id
-     * @return recurring expense if found, null otherwise
+     * @param column
+     * @return
      */
-    @Nullable
-    public RecurringExpense findRecurringExpenseForId(long id)
+    @NonNull
+    private static String getRecurringColumnSelection(@NonNull String column)
     {
-        try ( Cursor cursor = database.query(SQLiteDBHelper.TABLE_RECURRING_EXPENSE, null, SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " = " + id, null, null, null, null, "1") )
-        {
-
-            if ( cursor.moveToFirst() )
-            {
-                return recurringExpenseFromCursor(cursor);
-            }
+        return "rec." + column + " AS " + RECURRING_COLUMN_PREFIX + column;
+    }
 
-            return null;
-        }
+    /**
+     * Get the where clause matching the expense with the given id
+     *
+     * @param expenseId
+     * @return
+     */
+    @NonNull
+    private static String getExpenseIdClause(long expenseId)
+    {
+        return SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_DB_ID + " = " + expenseId;
     }
 
-// -------------------------------------------->
+    /**
+     * Get the where clause matching the exceptions (modified or deleted occurrences) of the given recurring expense
+     *
+     * @param recurringExpenseId
+     * @return
+     */
+    @NonNull
+    private static String getRecurringExpenseExceptionsClause(long recurringExpenseId)
+    {
+        return SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID + " = " + recurringExpenseId;
+    }
 
     /**
      * Deserialize an expense from DB
@@ -613,37 +951,56 @@ public final class DB
         (
             cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_EXPENSE_DB_ID)),
             cursor.getString(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_EXPENSE_TITLE)),
-            (double) cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT)) / 100.d,
+            Money.ofCents(cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT))),
             new Date(cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_EXPENSE_DATE))),
-            recurringExpense
+            recurringExpense,
+            getDateFromCursor(cursor, SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE)
         );
     }
 
     /**
-     * Find the recurring expense associated with an expense cursor
+     * Query the displayed expenses matching the given where clause, joined with their recurring
+     * expense in a single query
      *
-     * @param cursor
-     * @return
+     * @param whereClause where clause on the expense table (columns must be prefixed by the table name)
+     * @param recurringExpensesById identity map of recurring expenses by id, filled by this method
+     * @return the expenses ordered by date
      */
-    @Nullable
-    private RecurringExpense getRecurringExpenseForExpenseCursor(@NonNull Cursor cursor)
+    @NonNull
+    private List<Expense> queryExpenses(@NonNull String whereClause, @NonNull LongSparseArray<RecurringExpense> recurringExpensesById)
     {
-        long recurringId = 0;
-        try
-        {
-            recurringId = cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID));
-        }
-        catch(Exception e)
+        try ( Cursor cursor = database.rawQuery(EXPENSE_WITH_RECURRING_EXPENSE_QUERY + " WHERE (" + whereClause + ") AND " + SQLiteDBHelper.CONDITION_DISPLAYED_EXPENSE + " ORDER BY " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_DATE, null) )
         {
-            // Exception can be thrown on null depending on impl.
-        }
+            List<Expense> expenses = new ArrayList<>(cursor.getCount());
 
-        if( recurringId > 0 )
-        {
-            return findRecurringExpenseForId(recurringId);
-        }
+            final int recurringIdColumnIndex = cursor.getColumnIndex(RECURRING_COLUMN_PREFIX + SQLiteDBHelper.COLUMN_RECURRING_DB_ID);
+            while( cursor.moveToNext() )
+            {
+                try
+                {
+                    RecurringExpense recurringExpense = null;
+                    if( !cursor.isNull(recurringIdColumnIndex) )
+                    {
+                        long recurringId = cursor.getLong(recurringIdColumnIndex);
+
+                        recurringExpense = recurringExpensesById.get(recurringId);
+                        if( recurringExpense == null )
+                        {
+                            recurringExpense = recurringExpenseFromCursor(cursor, RECURRING_COLUMN_PREFIX);
+                            recurringExpensesById.put(recurringId, recurringExpense);
+                        }
+                    }
+
+                    expenses.add(ExpenseFromCursor(cursor, recurringExpense));
+                }
+                catch (Exception e)
+                {
+                    Logger.error(false, "Error occurred querying DB for expenses", e);
+                }
+            }
 
-        return null;
+            return expenses;
+        }
     }
 
     /**
@@ -664,12 +1021,14 @@ public final class DB
 
         values.put(SQLiteDBHelper.COLUMN_EXPENSE_TITLE, expense.getTitle());
         values.put(SQLiteDBHelper.COLUMN_EXPENSE_DATE, expense.getDate().getTime());
-        values.put(SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT, CurrencyHelper.getDBValueForDouble(expense.getAmount()));
+        values.put(SQLiteDBHelper.COLUMN_EXPENSE_DAY, DateHelper.getEpochDay(expense.getDate()));
+        values.put(SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT, expense.getAmount().getCents());
 
         if( expense.isRecurring() )
         {
             assert expense.getAssociatedRecurringExpense() != null;
             values.put(SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID, expense.getAssociatedRecurringExpense().getId());
+            values.put(SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE, (expense.getOccurrenceDate() != null ? expense.getOccurrenceDate() : expense.getDate()).getTime());
         }
 
         return values;
@@ -683,19 +1042,53 @@ public final class DB
      * @throws JSONException
      */
     @NonNull
-    private static RecurringExpense recurringExpenseFromCursor(@NonNull Cursor cursor)
+    static RecurringExpense recurringExpenseFromCursor(@NonNull Cursor cursor)
+    {
+        return recurringExpenseFromCursor(cursor, "");
+    }
+
+    /**
+     * Deserialize a recurring expense from DB
+     *
+     * @param cursor
+     * @param columnPrefix prefix of the recurring expense columns in the cursor
+     * @return
+     */
+    @NonNull
+    private static RecurringExpense recurringExpenseFromCursor(@NonNull Cursor cursor, @NonNull String columnPrefix)
     {
         return new RecurringExpense
         (
-            cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_RECURRING_DB_ID)),
-            cursor.getString(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_RECURRING_TITLE)),
-            (double) cursor.getLong(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_RECURRING_AMOUNT)) / 100.d,
-            new Date(cursor.getInt(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_RECURRING_RECURRING_DATE))),
-            RecurringExpenseType.valueOf(cursor.getString(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_RECURRING_TYPE))),
-            cursor.getInt(cursor.getColumnIndex(SQLiteDBHelper.COLUMN_RECURRING_MODIFIED)) == 1
+            cursor.getLong(cursor.getColumnIndex(columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_DB_ID)),
+            cursor.getString(cursor.getColumnIndex(columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_TITLE)),
+            Money.ofCents(cursor.getLong(cursor.getColumnIndex(columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_AMOUNT))),
+            new Date(cursor.getLong(cursor.getColumnIndex(columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_RECURRING_DATE))),
+            RecurringExpenseType.valueOf(cursor.getString(cursor.getColumnIndex(columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_TYPE))),
+            cursor.getInt(cursor.getColumnIndex(columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_MODIFIED)) == 1,
+            getDateFromCursor(cursor, columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_START_DATE),
+            getDateFromCursor(cursor, columnPrefix + SQLiteDBHelper.COLUMN_RECURRING_END_DATE)
         );
     }
 
+    /**
+     * Read a nullable date column
+     *
+     * @param cursor
+     * @param column
+     * @return the date, null if the column is null
+     */
+    @Nullable
+    private static Date getDateFromCursor(@NonNull Cursor cursor, @NonNull String column)
+    {
+        int columnIndex = cursor.getColumnIndex(column);
+        if( cursor.isNull(columnIndex) )
+        {
+            return null;
+        }
+
+        return new Date(cursor.getLong(columnIndex));
+    }
+
     /**
      * Generate serialized values for a recurring expense
      *
@@ -715,10 +1108,28 @@ public final class DB
 
         values.put(SQLiteDBHelper.COLUMN_RECURRING_TITLE, expense.getTitle());
         values.put(SQLiteDBHelper.COLUMN_RECURRING_RECURRING_DATE, expense.getRecurringDate().getTime());
-        values.put(SQLiteDBHelper.COLUMN_RECURRING_AMOUNT, CurrencyHelper.getDBValueForDouble(expense.getAmount()));
+        values.put(SQLiteDBHelper.COLUMN_RECURRING_AMOUNT, expense.getAmount().getCents());
         values.put(SQLiteDBHelper.COLUMN_RECURRING_TYPE, expense.getType().name());
         values.put(SQLiteDBHelper.COLUMN_RECURRING_MODIFIED, expense.isModified() ? 1 : 0);
 
+        if( expense.getStartDate() != null )
+        {
+            values.put(SQLiteDBHelper.COLUMN_RECURRING_START_DATE, expense.getStartDate().getTime());
+        }
+        else
+        {
+            values.putNull(SQLiteDBHelper.COLUMN_RECURRING_START_DATE);
+        }
+
+        if( expense.getEndDate() != null )
+        {
+            values.put(SQLiteDBHelper.COLUMN_RECURRING_END_DATE, expense.getEndDate().getTime());
+        }
+        else
+        {
+            values.putNull(SQLiteDBHelper.COLUMN_RECURRING_END_DATE);
+        }
+
         return values;
     }
 }
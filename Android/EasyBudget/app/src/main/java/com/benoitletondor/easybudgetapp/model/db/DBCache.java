@@ -16,44 +16,154 @@
 
 package com.benoitletondor.easybudgetapp.model.db;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseBooleanArray;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.collection.SimpleArrayMap;
 
 import com.benoitletondor.easybudgetapp.helper.DateHelper;
 import com.benoitletondor.easybudgetapp.helper.Logger;
+import com.benoitletondor.easybudgetapp.helper.ParameterKeys;
+import com.benoitletondor.easybudgetapp.helper.Parameters;
 import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
 
-import java.util.Calendar;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Cache for SQLite database
+ * Cache for SQLite database.<br>
+ * <br>
+ * Data is cached per month and the least recently used months are evicted when the cache
+ * contains more than {@link #maxMonths} months or more than {@link #maxBytes} (estimated) bytes.<br>
+ * <br>
+ * Each month is an immutable snapshot that is replaced as a whole when its data changes, so reads
+ * never lock and never see a partially loaded month. Expenses are stored in a compact {@link MonthBlock}
+ * and only turned into {@link Expense} objects when the expenses of a day are requested.<br>
+ * <br>
+ * Days and months are identified by their epoch day and epoch month (see {@link DateHelper#getEpochDay(long)}
+ * and {@link DateHelper#getEpochMonth(int, int)}), so that reads don't allocate anything.
  *
  * @author Benoit LETONDOR
  */
 public class DBCache
 {
+    /**
+     * Default maximum number of months kept in cache
+     */
+    private static final int DEFAULT_MAX_MONTHS = 12;
+    /**
+     * Default maximum estimated size of the cache in bytes
+     */
+    private static final long DEFAULT_MAX_BYTES = 512 * 1024;
+    /**
+     * Returned by {@link #getBalanceCentsForDay(int)} when the balance isn't cached
+     */
+    public static final long NO_BALANCE = Long.MIN_VALUE;
+    /**
+     * Number of months kept when the system asks to trim memory while the app is running
+     */
+    private static final int TRIM_MEMORY_RUNNING_MONTHS = 3;
+    /**
+     * Number of months prefetched ahead of the displayed one in the navigation direction
+     */
+    private static final int PREFETCH_AHEAD_MONTHS = 2;
+    /**
+     * Value of {@link #displayedMonth} when no month has been displayed yet
+     */
+    private static final int NO_MONTH = Integer.MIN_VALUE;
+
+    /**
+     * Estimated size of a cached balance in bytes
+     */
+    private static final int BALANCE_ENTRY_SIZE = 8;
+
+// ------------------------------------->
+
     /**
      * Saved application context
      */
     private final Context context;
     /**
-     * Map that contains expenses saved per day
+     * Cached months. Read without locking, only replaced while holding {@link #lock}.
+     */
+    private volatile MonthTable months = MonthTable.EMPTY;
+    /**
+     * Lock guarding writes of {@link #months} and the loading state
+     */
+    private final Object lock = new Object();
+    /**
+     * Lock ordering the writes and deletes of the snapshot file, never taken from the main thread
+     */
+    private final Object snapshotLock = new Object();
+    /**
+     * Clock used to stamp month accesses for LRU eviction
      */
-    private final SimpleArrayMap<Date, List<Expense>> expenses = new SimpleArrayMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
     /**
-     * Map that contains balances saved per day
+     * Estimated size of all cached months in bytes
      */
-    private final SimpleArrayMap<Date, Double> balances = new SimpleArrayMap<>();
+    private long cachedBytes = 0;
+    /**
+     * Incremented on every change of the DB, so that data loaded before a change is not cached
+     */
+    private int generation = 0;
+    /**
+     * Number of DB writes in progress, guarded by the {@link #lock}. Loads wait for them to be done
+     * since balances read meanwhile may already include deltas that are then applied to the cache.
+     */
+    private int pendingWrites = 0;
+    /**
+     * Maximum number of months to keep in cache
+     */
+    private int maxMonths = DEFAULT_MAX_MONTHS;
+    /**
+     * Maximum estimated size of the cache in bytes
+     */
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    /**
+     * Months whose expenses are being loaded (or waiting to be), guarded by the {@link #lock}
+     */
+    private final SparseBooleanArray loadingExpensesMonths = new SparseBooleanArray();
+    /**
+     * Months whose balances are being loaded (or waiting to be), guarded by the {@link #lock}
+     */
+    private final SparseBooleanArray loadingBalancesMonths = new SparseBooleanArray();
+    /**
+     * Months waiting to be prefetched, in priority order, guarded by the {@link #lock}
+     */
+    private final List<Integer> prefetchMonths = new ArrayList<>();
+    /**
+     * Is a {@link PrefetchRunnable} waiting in the executor, guarded by the {@link #lock}
+     */
+    private boolean prefetchScheduled = false;
+    /**
+     * Month currently displayed, {@link #NO_MONTH} if none, guarded by the {@link #lock}
+     */
+    private int displayedMonth = NO_MONTH;
     /**
      * Single thread executor to load data from DB
      */
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Listeners notified when a month is loaded, guarded by their own lock
+     */
+    private final List<MonthLoadedListener> listeners = new ArrayList<>();
+    /**
+     * Handler used to notify listeners on the main thread
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
 // ------------------------------------->
 
@@ -66,6 +176,74 @@ public class DBCache
         this.context = context.getApplicationContext();
     }
 
+    /**
+     * Register a listener that will be notified when data of a month is loaded
+     *
+     * @param listener
+     */
+    public void addMonthLoadedListener(@NonNull MonthLoadedListener listener)
+    {
+        synchronized (listeners)
+        {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregister a listener registered with {@link #addMonthLoadedListener(MonthLoadedListener)}
+     *
+     * @param listener
+     */
+    public void removeMonthLoadedListener(@NonNull MonthLoadedListener listener)
+    {
+        synchronized (listeners)
+        {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Set the budget of the cache, evicting least recently used months if needed
+     *
+     * @param maxMonths maximum number of months to keep in cache
+     * @param maxBytes maximum estimated size of the cache in bytes
+     */
+    public void setBudget(int maxMonths, long maxBytes)
+    {
+        synchronized (lock)
+        {
+            this.maxMonths = maxMonths;
+            this.maxBytes = maxBytes;
+
+            trimToBudget(maxMonths, maxBytes);
+        }
+    }
+
+    /**
+     * Release cached data when the system is running low on memory, should be called from
+     * {@link ComponentCallbacks2#onTrimMemory(int)}
+     *
+     * @param level the trim level given by the system
+     */
+    public void onTrimMemory(int level)
+    {
+        if( level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL )
+        {
+            Logger.debug("DBCache: Trim memory, wiping cache (level: "+level+")");
+            wipeAll();
+        }
+        else if( level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW )
+        {
+            Logger.debug("DBCache: Trim memory, keeping "+TRIM_MEMORY_RUNNING_MONTHS+" months (level: "+level+")");
+
+            synchronized (lock)
+            {
+                prefetchMonths.clear();
+                trimToBudget(TRIM_MEMORY_RUNNING_MONTHS, maxBytes);
+            }
+        }
+    }
+
     /**
      * Load data for the given month if not already cached
      *
@@ -75,28 +253,325 @@ public class DBCache
     {
         Logger.debug("DBCache: Request to cache month: "+date);
 
-        executor.execute(new LoadMonthRunnable(context, date));
-        executor.execute(new LoadBalanceMonthRunnable(context, date));
+        final int month = DateHelper.getEpochMonth(DateHelper.getEpochDay(date));
+
+        scheduleExpensesLoad(month);
+        scheduleBalancesLoad(month);
+    }
+
+    /**
+     * Load data for the month that is now displayed and prefetch its neighbours at low priority:
+     * the previous and next months, plus {@link #PREFETCH_AHEAD_MONTHS} months in the navigation
+     * direction. Pending prefetches of months the user navigated past are cancelled.
+     *
+     * @param date a date of the displayed month (no need to clear the date before)
+     */
+    public void onMonthDisplayed(@NonNull Date date)
+    {
+        final int month = DateHelper.getEpochMonth(DateHelper.getEpochDay(date));
+
+        scheduleExpensesLoad(month);
+        scheduleBalancesLoad(month);
+
+        synchronized (lock)
+        {
+            final int direction = displayedMonth == NO_MONTH ? 0 : Integer.signum(month - displayedMonth);
+            displayedMonth = month;
+
+            prefetchMonths.clear();
+            if( direction == 0 )
+            {
+                prefetchMonths.add(month + 1);
+                prefetchMonths.add(month - 1);
+            }
+            else
+            {
+                for(int i = 1; i <= PREFETCH_AHEAD_MONTHS; i++)
+                {
+                    prefetchMonths.add(month + direction * i);
+                }
+                prefetchMonths.add(month - direction);
+            }
+
+            if( !prefetchScheduled )
+            {
+                prefetchScheduled = true;
+                executor.execute(new PrefetchRunnable());
+            }
+        }
+    }
+
+    /**
+     * Save the fully loaded months among the current month and its neighbours to the snapshot
+     * file, so that they can be restored by {@link #loadSnapshot()} on the next launch. Should be
+     * called when the app goes to background.
+     */
+    public void saveSnapshot()
+    {
+        executor.execute(() ->
+        {
+            final int saveGeneration;
+            final List<DBCacheSnapshot.Month> snapshotMonths = new ArrayList<>(3);
+
+            synchronized (lock)
+            {
+                // Cached months may not include the changes of a write in progress yet
+                if( pendingWrites > 0 )
+                {
+                    return;
+                }
+
+                saveGeneration = generation;
+
+                final int currentMonth = DateHelper.getEpochMonth(DateHelper.getEpochDay(System.currentTimeMillis()));
+                for(int month = currentMonth - 1; month <= currentMonth + 1; month++)
+                {
+                    CachedMonth cachedMonth = months.get(month);
+                    if( cachedMonth != null && cachedMonth.expenses != null && cachedMonth.balances != null )
+                    {
+                        snapshotMonths.add(new DBCacheSnapshot.Month(month, cachedMonth.expenses, cachedMonth.balances));
+                    }
+                }
+            }
+
+            if( snapshotMonths.isEmpty() )
+            {
+                return;
+            }
+
+            // A write started after the months were read deletes the snapshot only once it's saved
+            synchronized (snapshotLock)
+            {
+                synchronized (lock)
+                {
+                    if( generation != saveGeneration )
+                    {
+                        return;
+                    }
+                }
+
+                // Snapshots saved before this one are invalidated by the new DB generation
+                final Parameters parameters = Parameters.getInstance(context);
+                final long dbGeneration = parameters.getLong(ParameterKeys.DB_GENERATION, 0) + 1;
+                parameters.putLong(ParameterKeys.DB_GENERATION, dbGeneration);
+
+                try
+                {
+                    DBCacheSnapshot.write(context, dbGeneration, snapshotMonths);
+                    Logger.debug("DBCache: Snapshot saved with "+snapshotMonths.size()+" months (generation: "+dbGeneration+")");
+                }
+                catch (IOException e)
+                {
+                    Logger.warning("DBCache: Error while saving snapshot", e);
+                    DBCacheSnapshot.delete(context);
+                }
+            }
+        });
     }
 
     /**
-     * Instantly refresh cached data for the given day
+     * Restore the months saved by {@link #saveSnapshot()} if the DB didn't change since. Should be
+     * called at app launch, before any month load is requested.
+     */
+    public void loadSnapshot()
+    {
+        executor.execute(() ->
+        {
+            final int loadGeneration;
+            synchronized (lock)
+            {
+                loadGeneration = generation;
+            }
+
+            final long startNanos = System.nanoTime();
+            final List<DBCacheSnapshot.Month> snapshotMonths = DBCacheSnapshot.read(context, Parameters.getInstance(context).getLong(ParameterKeys.DB_GENERATION, 0));
+            if( snapshotMonths.isEmpty() )
+            {
+                return;
+            }
+
+            DBMetrics.recordMonthLoad(startNanos);
+
+            final List<Integer> restoredMonths = new ArrayList<>(snapshotMonths.size());
+            synchronized (lock)
+            {
+                if( generation != loadGeneration )
+                {
+                    return;
+                }
+
+                for(DBCacheSnapshot.Month snapshotMonth : snapshotMonths)
+                {
+                    if( months.get(snapshotMonth.month) == null )
+                    {
+                        publish(snapshotMonth.month, new CachedMonth(DateHelper.getFirstEpochDayOfMonth(snapshotMonth.month), snapshotMonth.expenses, snapshotMonth.balances, accessClock.incrementAndGet()));
+                        restoredMonths.add(snapshotMonth.month);
+                    }
+                }
+            }
+
+            Logger.debug("DBCache: Snapshot restored for months: "+restoredMonths);
+
+            for(int month : restoredMonths)
+            {
+                notifyMonthLoaded(month);
+            }
+        });
+    }
+
+    /**
+     * Must be called before writing to the DB, then {@link #onWriteFinished()} once the cache is
+     * updated, even if the write fails. Loads started before are discarded and the next ones wait
+     * for the write to be done. The snapshot is deleted before the write so that it can't be restored
+     * if the app is killed before the cache is updated.
+     */
+    public void onWriteStarted()
+    {
+        synchronized (lock)
+        {
+            pendingWrites++;
+            generation++;
+        }
+
+        synchronized (snapshotLock)
+        {
+            DBCacheSnapshot.delete(context);
+        }
+    }
+
+    /**
+     * Must be called after a DB write started with {@link #onWriteStarted()}, once the cache is updated
+     */
+    public void onWriteFinished()
+    {
+        synchronized (lock)
+        {
+            pendingWrites--;
+            generation++;
+
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Update cached data after expenses changed: balances of cached days are shifted by the
+     * deltas and expenses of the changed days are reloaded.
+     *
+     * @param db database link
+     * @param balanceDeltas balance deltas in cents by day key (see {@link DailyBalanceTable#getDayKey(long)}),
+     *                      including days whose expenses changed without changing the balance
+     */
+    public void onExpensesChanged(@NonNull DB db, @NonNull TreeMap<Long, Long> balanceDeltas)
+    {
+        Logger.debug("DBCache: Expenses changed for days: "+balanceDeltas.keySet());
+        DBMetrics.recordInvalidation();
+
+        final List<Integer> changedDays = new ArrayList<>(balanceDeltas.size());
+
+        synchronized (lock)
+        {
+            generation++;
+
+            final MonthTable table = months;
+            for(int i = 0; i < table.size(); i++)
+            {
+                final CachedMonth cachedMonth = table.valueAt(i);
+                if( cachedMonth.balances != null )
+                {
+                    long[] shiftedBalances = shiftBalances(cachedMonth.balances, cachedMonth.firstDay, balanceDeltas);
+                    if( shiftedBalances != null )
+                    {
+                        publish(table.keyAt(i), new CachedMonth(cachedMonth.firstDay, cachedMonth.expenses, shiftedBalances, cachedMonth.lastAccess));
+                    }
+                }
+            }
+
+            for(Long dayKey : balanceDeltas.keySet())
+            {
+                final int day = DailyBalanceTable.getEpochDayForDayKey(dayKey);
+
+                CachedMonth cachedMonth = months.get(DateHelper.getEpochMonth(day));
+                if( cachedMonth != null && cachedMonth.expenses != null )
+                {
+                    changedDays.add(day);
+                }
+            }
+        }
+
+        if( changedDays.isEmpty() )
+        {
+            return;
+        }
+
+        // Reload expenses of changed days outside of the lock
+        final List<List<Expense>> expensesForChangedDays = new ArrayList<>(changedDays.size());
+        for(int day : changedDays)
+        {
+            expensesForChangedDays.add(db.getExpensesForDay(DateHelper.getDateForEpochDay(day), false));
+        }
+
+        synchronized (lock)
+        {
+            for(int i = 0; i < changedDays.size(); i++)
+            {
+                final int day = changedDays.get(i);
+                final int month = DateHelper.getEpochMonth(day);
+
+                CachedMonth cachedMonth = months.get(month);
+                if( cachedMonth != null && cachedMonth.expenses != null )
+                {
+                    MonthBlock expenses = cachedMonth.expenses.withExpensesForDay(day - cachedMonth.firstDay, expensesForChangedDays.get(i));
+                    publish(month, new CachedMonth(cachedMonth.firstDay, expenses, cachedMonth.balances, cachedMonth.lastAccess));
+                }
+            }
+        }
+    }
+
+    /**
+     * Update cached data after a recurring expense changed. Its occurrences can change every day
+     * so cached months are reloaded, with a single query per month.
      *
      * @param db database link
-     * @param date cleaned date for the day
      */
-    public void refreshForDay(@NonNull DB db, @NonNull Date date)
+    public void onRecurringExpenseChanged(@NonNull DB db)
     {
-        Logger.debug("DBCache: Refreshing for day: "+date);
+        final int[] cachedMonths;
+        synchronized (lock)
+        {
+            generation++;
+            cachedMonths = months.keys();
+        }
+
+        Logger.debug("DBCache: Recurring expense changed, reloading months: "+Arrays.toString(cachedMonths));
+        DBMetrics.recordInvalidation();
+
+        final List<MonthBlock> expensesForMonths = new ArrayList<>(cachedMonths.length);
+        final List<long[]> balancesForMonths = new ArrayList<>(cachedMonths.length);
+        for(int month : cachedMonths)
+        {
+            final long startNanos = System.nanoTime();
+            expensesForMonths.add(loadExpensesForMonth(db, month));
+            balancesForMonths.add(db.getBalancesForMonth(month));
+            DBMetrics.recordMonthLoad(startNanos);
+        }
 
-        synchronized (balances)
+        synchronized (lock)
         {
-            balances.clear(); // TODO be smarter than delete all ?
+            for(int i = 0; i < cachedMonths.length; i++)
+            {
+                final int month = cachedMonths[i];
+
+                CachedMonth cachedMonth = months.get(month);
+                if( cachedMonth != null )
+                {
+                    publish(month, new CachedMonth(cachedMonth.firstDay, expensesForMonths.get(i), balancesForMonths.get(i), cachedMonth.lastAccess));
+                }
+            }
         }
 
-        synchronized (expenses)
+        for(int month : cachedMonths)
         {
-            expenses.put(DateHelper.cleanGMTDate(date), db.getExpensesForDay(date, false));
+            notifyMonthLoaded(month);
         }
     }
 
@@ -106,101 +581,503 @@ public class DBCache
     public void wipeAll()
     {
         Logger.debug("DBCache: Refreshing all");
+        DBMetrics.recordInvalidation();
 
-        synchronized (balances)
+        synchronized (lock)
         {
-            balances.clear();
+            generation++;
+            months = MonthTable.EMPTY;
+            cachedBytes = 0;
         }
+    }
+
+// ------------------------------------->
 
-        synchronized (expenses)
+    /**
+     * Get cached expenses for the day. Expenses are created from the cached data on every call,
+     * so this should only be used when the expenses of the day are displayed.
+     *
+     * @param day epoch day (see {@link DateHelper#getEpochDay(long)})
+     * @return a new list of new expenses if cached data is available, null otherwise
+     */
+    @Nullable
+    public List<Expense> getExpensesForDay(int day)
+    {
+        final int month = DateHelper.getEpochMonth(day);
+
+        CachedMonth cachedMonth = getCachedMonth(month);
+        if( cachedMonth != null && cachedMonth.expenses != null )
         {
-            expenses.clear();
+            DBMetrics.recordCacheRead(true);
+            return cachedMonth.expenses.getExpenses(day - cachedMonth.firstDay);
         }
+
+        DBMetrics.recordCacheRead(false);
+        scheduleExpensesLoad(month);
+        return null;
+    }
+
+    /**
+     * Does this day contains expense (if cached)
+     *
+     * @param day epoch day (see {@link DateHelper#getEpochDay(long)})
+     * @return true or false if data is cached, null otherwise
+     */
+    @Nullable
+    public Boolean hasExpensesForDay(int day)
+    {
+        final int month = DateHelper.getEpochMonth(day);
+
+        CachedMonth cachedMonth = getCachedMonth(month);
+        if( cachedMonth != null && cachedMonth.expenses != null )
+        {
+            DBMetrics.recordCacheRead(true);
+            return cachedMonth.expenses.hasExpenses(day - cachedMonth.firstDay);
+        }
+
+        DBMetrics.recordCacheRead(false);
+        scheduleExpensesLoad(month);
+        return null;
+    }
+
+    /**
+     * Get balance for the given day if cached
+     *
+     * @param day epoch day (see {@link DateHelper#getEpochDay(long)})
+     * @return balance if cached, null otherwise
+     */
+    @Nullable
+    public Money getBalanceForDay(int day)
+    {
+        final long balance = getBalanceCentsForDay(day);
+        return balance != NO_BALANCE ? Money.ofCents(balance) : null;
+    }
+
+    /**
+     * Get balance in cents for the given day if cached, without allocating anything
+     *
+     * @param day epoch day (see {@link DateHelper#getEpochDay(long)})
+     * @return balance in cents if cached, {@link #NO_BALANCE} otherwise
+     */
+    public long getBalanceCentsForDay(int day)
+    {
+        final int month = DateHelper.getEpochMonth(day);
+
+        CachedMonth cachedMonth = getCachedMonth(month);
+        if( cachedMonth != null && cachedMonth.balances != null )
+        {
+            DBMetrics.recordCacheRead(true);
+            return cachedMonth.balances[day - cachedMonth.firstDay];
+        }
+
+        DBMetrics.recordCacheRead(false);
+        scheduleBalancesLoad(month);
+        return NO_BALANCE;
     }
 
 // ------------------------------------->
 
     /**
-     * Get cached expenses for the day
+     * Shift the given cached balances by the deltas happening on or before each day
      *
-     * @param date cleaned date for the day
-     * @return list of expense if cached data is available, null otherwise
+     * @param balances cached balances of a month, left untouched
+     * @param firstDay epoch day of the first balance
+     * @param balanceDeltas balance deltas in cents by day key
+     * @return a shifted copy of the balances, null if no balance changed
      */
     @Nullable
-    public List<Expense> getExpensesForDay(@NonNull Date date)
+    private static long[] shiftBalances(@NonNull long[] balances, int firstDay, @NonNull TreeMap<Long, Long> balanceDeltas)
     {
-        synchronized (expenses)
+        long[] shiftedBalances = null;
+
+        for(int i = 0; i < balances.length; i++)
         {
-            if( expenses.containsKey(date) )
+            long delta = 0;
+            for(Long dayDelta : balanceDeltas.headMap(DailyBalanceTable.getDayKeyForEpochDay(firstDay + i), true).values())
             {
-                return expenses.get(date);
+                delta += dayDelta;
             }
 
-            executor.execute(new LoadMonthRunnable(context, date));
-            return null;
+            if( delta != 0 )
+            {
+                if( shiftedBalances == null )
+                {
+                    shiftedBalances = balances.clone();
+                }
+
+                shiftedBalances[i] = balances[i] + delta;
+            }
         }
+
+        return shiftedBalances;
     }
 
     /**
-     * Does this day contains expense (if cached)
+     * Load expenses of the given month from DB
      *
-     * @param date cleaned date for the day
-     * @return true or false if data is cached, null otherwise
+     * @param db database link
+     * @param month epoch month
+     * @return expenses of the month
      */
-    @Nullable
-    public Boolean hasExpensesForDay(@NonNull Date date)
+    @NonNull
+    private static MonthBlock loadExpensesForMonth(@NonNull DB db, int month)
+    {
+        final int firstDay = DateHelper.getFirstEpochDayOfMonth(month);
+        final int numberOfDays = DateHelper.getFirstEpochDayOfMonth(month + 1) - firstDay;
+
+        // Load the whole month with a single query
+        final List<Expense> expenses = db.getExpensesForMonth(DateHelper.getDateForEpochDay(firstDay));
+
+        final MonthBlock.Builder builder = new MonthBlock.Builder(firstDay, numberOfDays, expenses.size());
+        for(Expense expense : expenses)
+        {
+            final int dayOffset = DateHelper.getEpochDay(expense.getDate()) - firstDay;
+            if( dayOffset >= 0 && dayOffset < numberOfDays )
+            {
+                builder.add(dayOffset, expense);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Notify listeners on the main thread that data of the given month has been loaded
+     *
+     * @param month epoch month
+     */
+    private void notifyMonthLoaded(final int month)
     {
-        synchronized (expenses)
+        mainHandler.post(() ->
         {
-            List<Expense> expensesForDay = expenses.get(date);
-            if( expensesForDay == null )
+            final List<MonthLoadedListener> listenersToNotify;
+            synchronized (listeners)
             {
-                executor.execute(new LoadMonthRunnable(context, date));
-                return null;
+                listenersToNotify = new ArrayList<>(listeners);
             }
 
-            return !expensesForDay.isEmpty();
+            for(MonthLoadedListener listener : listenersToNotify)
+            {
+                listener.onMonthLoaded(month);
+            }
+        });
+    }
+
+    /**
+     * Wait for the DB writes in progress to be done. Must be called while holding the {@link #lock}.
+     *
+     * @return true if there's no write in progress anymore, false if the thread was interrupted
+     */
+    private boolean awaitPendingWrites()
+    {
+        while( pendingWrites > 0 )
+        {
+            try
+            {
+                lock.wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
         }
+
+        return true;
     }
 
     /**
-     * Get balance for the given day if cached
+     * Schedule the load of the expenses of the given month, unless a load is already pending for it
      *
-     * @param day cleaned date for the day
-     * @return balance if cached, null otherwise
+     * @param month epoch month
+     */
+    private void scheduleExpensesLoad(int month)
+    {
+        synchronized (lock)
+        {
+            if( loadingExpensesMonths.get(month) )
+            {
+                return;
+            }
+
+            loadingExpensesMonths.put(month, true);
+        }
+
+        DBMetrics.recordLoadQueued();
+        executor.execute(new LoadMonthRunnable(context, month));
+    }
+
+    /**
+     * Schedule the load of the balances of the given month, unless a load is already pending for it
+     *
+     * @param month epoch month
+     */
+    private void scheduleBalancesLoad(int month)
+    {
+        synchronized (lock)
+        {
+            if( loadingBalancesMonths.get(month) )
+            {
+                return;
+            }
+
+            loadingBalancesMonths.put(month, true);
+        }
+
+        DBMetrics.recordLoadQueued();
+        executor.execute(new LoadBalanceMonthRunnable(context, month));
+    }
+
+    /**
+     * Get the cached month and mark it as recently used
+     *
+     * @param month epoch month
+     * @return the cached month, null if not cached
      */
     @Nullable
-    public Double getBalanceForDay(@NonNull Date day)
+    private CachedMonth getCachedMonth(int month)
+    {
+        CachedMonth cachedMonth = months.get(month);
+        if( cachedMonth != null )
+        {
+            cachedMonth.lastAccess = accessClock.incrementAndGet();
+        }
+
+        return cachedMonth;
+    }
+
+    /**
+     * Publish a new snapshot of a month and evict months if the cache is over budget. Must be
+     * called while holding the {@link #lock}.
+     *
+     * @param month epoch month
+     * @param cachedMonth the new snapshot of the month
+     */
+    private void publish(int month, @NonNull CachedMonth cachedMonth)
     {
-        synchronized (balances)
+        CachedMonth previousMonth = months.get(month);
+        if( previousMonth != null )
         {
-            if( balances.containsKey(day) )
+            cachedBytes -= previousMonth.estimatedSize;
+        }
+        cachedBytes += cachedMonth.estimatedSize;
+
+        months = months.put(month, cachedMonth);
+
+        trimToBudget(maxMonths, maxBytes);
+    }
+
+    /**
+     * Evict least recently used months until the cache fits in the given budget. Must be called
+     * while holding the {@link #lock}.
+     *
+     * @param maxMonths maximum number of months to keep
+     * @param maxBytes maximum estimated size to keep
+     */
+    private void trimToBudget(int maxMonths, long maxBytes)
+    {
+        while( months.size() > 0 && (months.size() > maxMonths || cachedBytes > maxBytes) )
+        {
+            final MonthTable table = months;
+
+            int eldestIndex = 0;
+            for(int i = 1; i < table.size(); i++)
             {
-                return balances.get(day);
+                if( table.valueAt(i).lastAccess < table.valueAt(eldestIndex).lastAccess )
+                {
+                    eldestIndex = i;
+                }
             }
 
-            executor.execute(new LoadBalanceMonthRunnable(context, day));
-            return null;
+            Logger.debug("DBCache: Evicting month: "+table.keyAt(eldestIndex));
+
+            cachedBytes -= table.valueAt(eldestIndex).estimatedSize;
+            months = table.removeAt(eldestIndex);
+            DBMetrics.recordEviction();
         }
     }
 
 // --------------------------------------->
 
+    /**
+     * Listener notified when data of a month is loaded into the cache
+     */
+    public interface MonthLoadedListener
+    {
+        /**
+         * Called on the main thread when expenses or balances of a month have been loaded
+         *
+         * @param month the epoch month (see {@link DateHelper#getEpochMonth(int, int)})
+         */
+        @MainThread
+        void onMonthLoaded(int month);
+    }
+
+    /**
+     * Immutable table of cached months sorted by epoch month, replaced as a whole on every change
+     */
+    private static final class MonthTable
+    {
+        /**
+         * Table without any month
+         */
+        private static final MonthTable EMPTY = new MonthTable(new int[0], new CachedMonth[0]);
+
+        /**
+         * Sorted epoch months
+         */
+        private final int[] months;
+        /**
+         * Cached data of each month
+         */
+        private final CachedMonth[] cachedMonths;
+
+        private MonthTable(@NonNull int[] months, @NonNull CachedMonth[] cachedMonths)
+        {
+            this.months = months;
+            this.cachedMonths = cachedMonths;
+        }
+
+        @Nullable
+        private CachedMonth get(int month)
+        {
+            final int index = Arrays.binarySearch(months, month);
+            return index >= 0 ? cachedMonths[index] : null;
+        }
+
+        private int size()
+        {
+            return months.length;
+        }
+
+        private int keyAt(int index)
+        {
+            return months[index];
+        }
+
+        @NonNull
+        private CachedMonth valueAt(int index)
+        {
+            return cachedMonths[index];
+        }
+
+        @NonNull
+        private int[] keys()
+        {
+            return months.clone();
+        }
+
+        /**
+         * @return a copy of this table with the given month added or replaced
+         */
+        @NonNull
+        private MonthTable put(int month, @NonNull CachedMonth cachedMonth)
+        {
+            int index = Arrays.binarySearch(months, month);
+            if( index >= 0 )
+            {
+                final CachedMonth[] newCachedMonths = cachedMonths.clone();
+                newCachedMonths[index] = cachedMonth;
+                return new MonthTable(months, newCachedMonths);
+            }
+
+            index = -index - 1;
+
+            final int[] newMonths = new int[months.length + 1];
+            final CachedMonth[] newCachedMonths = new CachedMonth[months.length + 1];
+            System.arraycopy(months, 0, newMonths, 0, index);
+            System.arraycopy(cachedMonths, 0, newCachedMonths, 0, index);
+            newMonths[index] = month;
+            newCachedMonths[index] = cachedMonth;
+            System.arraycopy(months, index, newMonths, index + 1, months.length - index);
+            System.arraycopy(cachedMonths, index, newCachedMonths, index + 1, months.length - index);
+
+            return new MonthTable(newMonths, newCachedMonths);
+        }
+
+        /**
+         * @return a copy of this table without the month at the given index
+         */
+        @NonNull
+        private MonthTable removeAt(int index)
+        {
+            final int[] newMonths = new int[months.length - 1];
+            final CachedMonth[] newCachedMonths = new CachedMonth[months.length - 1];
+            System.arraycopy(months, 0, newMonths, 0, index);
+            System.arraycopy(cachedMonths, 0, newCachedMonths, 0, index);
+            System.arraycopy(months, index + 1, newMonths, index, months.length - index - 1);
+            System.arraycopy(cachedMonths, index + 1, newCachedMonths, index, months.length - index - 1);
+
+            return new MonthTable(newMonths, newCachedMonths);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the data cached for a month
+     */
+    private static class CachedMonth
+    {
+        /**
+         * Epoch day of the first day of the month
+         */
+        private final int firstDay;
+        /**
+         * Expenses of the month, null if not loaded yet
+         */
+        @Nullable
+        private final MonthBlock expenses;
+        /**
+         * Balances in cents of each day of the month indexed from {@link #firstDay}, null if not loaded yet
+         */
+        @Nullable
+        private final long[] balances;
+        /**
+         * Estimated memory used by the data of this month in bytes
+         */
+        private final long estimatedSize;
+        /**
+         * Last time this month was read, from {@link #accessClock}
+         */
+        private volatile long lastAccess;
+
+        private CachedMonth(int firstDay, @Nullable MonthBlock expenses, @Nullable long[] balances, long lastAccess)
+        {
+            this.firstDay = firstDay;
+            this.expenses = expenses;
+            this.balances = balances;
+            this.lastAccess = lastAccess;
+
+            long size = 0;
+
+            if( expenses != null )
+            {
+                size += expenses.getEstimatedSize();
+            }
+
+            if( balances != null )
+            {
+                size += (long) BALANCE_ENTRY_SIZE * balances.length;
+            }
+
+            estimatedSize = size;
+        }
+    }
+
     /**
      * Runnable that loads data for a month in cache
      */
     private class LoadMonthRunnable implements Runnable
     {
         /**
-         * Date containing the month to load
+         * Epoch month to load
          */
-        private final Date month;
+        private final int month;
         /**
          * Saved context to get DB
          */
         private final Context context;
 
-        private LoadMonthRunnable(@NonNull Context context, @NonNull Date month)
+        private LoadMonthRunnable(@NonNull Context context, int month)
         {
             this.month = month;
             this.context = context;
@@ -209,51 +1086,60 @@ public class DBCache
         @Override
         public void run()
         {
-            DB db = null;
             try
             {
-                // Init a calendar to the given date, setting the day of month to 1
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(DateHelper.cleanDate(month));
-                cal.set(Calendar.DAY_OF_MONTH, 1);
+                DB db = new DB(context.getApplicationContext());
 
-                synchronized (expenses)
+                // Load again if data changed while loading
+                while( true )
                 {
-                    if (expenses.containsKey(DateHelper.cleanGMTDate(cal.getTime())))
+                    final int loadGeneration;
+                    synchronized (lock)
                     {
-                        return;
-                    }
-                }
+                        if( !awaitPendingWrites() )
+                        {
+                            return;
+                        }
 
-                db = new DB(context.getApplicationContext());
+                        CachedMonth cachedMonth = months.get(month);
+                        if( cachedMonth != null && cachedMonth.expenses != null )
+                        {
+                            return;
+                        }
 
-                // Save the month we wanna load cache for
-                int month = cal.get(Calendar.MONTH);
+                        loadGeneration = generation;
+                    }
 
-                Logger.debug("DBCache: Caching data for month: "+month);
+                    Logger.debug("DBCache: Caching data for month: "+month);
 
-                // Iterate over day of month (while are still on that month)
-                while( cal.get(Calendar.MONTH) == month )
-                {
-                    Date date = cal.getTime();
-                    List<Expense> expensesForDay = db.getExpensesForDay(date, false);
+                    final long startNanos = System.nanoTime();
+                    final MonthBlock expensesForMonth = loadExpensesForMonth(db, month);
+                    DBMetrics.recordMonthLoad(startNanos);
 
-                    synchronized (expenses)
+                    synchronized (lock)
                     {
-                        expenses.put(DateHelper.cleanGMTDate(date), expensesForDay);
+                        if( generation == loadGeneration )
+                        {
+                            CachedMonth cachedMonth = months.get(month);
+                            publish(month, cachedMonth == null ?
+                                new CachedMonth(DateHelper.getFirstEpochDayOfMonth(month), expensesForMonth, null, accessClock.incrementAndGet()) :
+                                new CachedMonth(cachedMonth.firstDay, expensesForMonth, cachedMonth.balances, cachedMonth.lastAccess));
+                            break;
+                        }
                     }
-
-                    cal.add(Calendar.DAY_OF_MONTH, 1);
                 }
 
                 Logger.debug("DBCache: Data cached for month: "+month);
+                notifyMonthLoaded(month);
             }
             finally
             {
-                if( db != null )
+                synchronized (lock)
                 {
-                    db.close();
+                    loadingExpensesMonths.delete(month);
                 }
+
+                DBMetrics.recordLoadDone();
             }
         }
     }
@@ -264,15 +1150,15 @@ public class DBCache
     private class LoadBalanceMonthRunnable implements Runnable
     {
         /**
-         * Date containing the month to load
+         * Epoch month to load
          */
-        private final Date month;
+        private final int month;
         /**
          * Saved context to get DB
          */
         private final Context context;
 
-        private LoadBalanceMonthRunnable(@NonNull Context context, @NonNull Date month)
+        private LoadBalanceMonthRunnable(@NonNull Context context, int month)
         {
             this.month = month;
             this.context = context;
@@ -281,52 +1167,116 @@ public class DBCache
         @Override
         public void run()
         {
-            DB db = null;
             try
             {
-                // Init a calendar to the given date, setting the day of month to 1
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(DateHelper.cleanDate(month));
-                cal.set(Calendar.DAY_OF_MONTH, 1);
+                DB db = new DB(context.getApplicationContext());
 
-                synchronized (balances)
+                // Load again if data changed while loading
+                while( true )
                 {
-                    if (balances.containsKey(DateHelper.cleanGMTDate(cal.getTime())))
+                    final int loadGeneration;
+                    synchronized (lock)
                     {
-                        return;
-                    }
-                }
+                        if( !awaitPendingWrites() )
+                        {
+                            return;
+                        }
 
-                db = new DB(context.getApplicationContext());
+                        CachedMonth cachedMonth = months.get(month);
+                        if( cachedMonth != null && cachedMonth.balances != null )
+                        {
+                            return;
+                        }
 
-                // Save the month we wanna load cache for
-                int month = cal.get(Calendar.MONTH);
+                        loadGeneration = generation;
+                    }
 
-                Logger.debug("DBCache: Caching balance data for month: "+month);
+                    Logger.debug("DBCache: Caching balance data for month: "+month);
 
-                // Iterate over day of month (while are still on that month)
-                while( cal.get(Calendar.MONTH) == month )
-                {
-                    Date date = cal.getTime();
-                    double balanceForDay = db.getBalanceForDay(date, false);
+                    final long startNanos = System.nanoTime();
+                    final long[] balancesForMonth = db.getBalancesForMonth(month);
+                    DBMetrics.recordMonthLoad(startNanos);
 
-                    synchronized (balances)
+                    synchronized (lock)
                     {
-                        balances.put(DateHelper.cleanGMTDate(date), balanceForDay);
+                        if( generation == loadGeneration )
+                        {
+                            CachedMonth cachedMonth = months.get(month);
+                            publish(month, cachedMonth == null ?
+                                new CachedMonth(DateHelper.getFirstEpochDayOfMonth(month), null, balancesForMonth, accessClock.incrementAndGet()) :
+                                new CachedMonth(cachedMonth.firstDay, cachedMonth.expenses, balancesForMonth, cachedMonth.lastAccess));
+                            break;
+                        }
                     }
-
-                    cal.add(Calendar.DAY_OF_MONTH, 1);
                 }
 
                 Logger.debug("DBCache: Data balance cached for month: "+month);
+                notifyMonthLoaded(month);
             }
             finally
             {
-                if( db != null )
+                synchronized (lock)
+                {
+                    loadingBalancesMonths.delete(month);
+                }
+
+                DBMetrics.recordLoadDone();
+            }
+        }
+    }
+
+    /**
+     * Runnable that prefetches the next month waiting in {@link #prefetchMonths}.<br>
+     * <br>
+     * A single month is loaded per run and the runnable is then queued again behind the loads
+     * requested in the meantime, so that prefetching never delays data the UI is waiting for.
+     */
+    private class PrefetchRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            final int month;
+            final boolean loadExpenses;
+            final boolean loadBalances;
+            synchronized (lock)
+            {
+                if( prefetchMonths.isEmpty() )
                 {
-                    db.close();
+                    prefetchScheduled = false;
+                    return;
+                }
+
+                month = prefetchMonths.remove(0);
+
+                loadExpenses = !loadingExpensesMonths.get(month);
+                if( loadExpenses )
+                {
+                    loadingExpensesMonths.put(month, true);
+                }
+
+                loadBalances = !loadingBalancesMonths.get(month);
+                if( loadBalances )
+                {
+                    loadingBalancesMonths.put(month, true);
                 }
             }
+
+            Logger.debug("DBCache: Prefetching month: "+month);
+
+            if( loadExpenses )
+            {
+                DBMetrics.recordLoadQueued();
+                new LoadMonthRunnable(context, month).run();
+            }
+
+            if( loadBalances )
+            {
+                DBMetrics.recordLoadQueued();
+                new LoadBalanceMonthRunnable(context, month).run();
+            }
+
+            executor.execute(this);
         }
     }
 
@@ -0,0 +1,361 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model.db;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.benoitletondor.easybudgetapp.BuildConfig;
+import com.benoitletondor.easybudgetapp.helper.DateHelper;
+import com.benoitletondor.easybudgetapp.helper.Logger;
+import com.benoitletondor.easybudgetapp.model.Money;
+import com.benoitletondor.easybudgetapp.model.RecurringExpense;
+import com.benoitletondor.easybudgetapp.model.RecurringExpenseType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Binary snapshot of cached months written to the app files dir, so that the cache can be warmed up
+ * at launch without querying the DB.<br>
+ * <br>
+ * The snapshot is only valid for the DB generation, app version and timezone it was written with.
+ *
+ * @author Benoit LETONDOR
+ */
+final class DBCacheSnapshot
+{
+    /**
+     * Name of the snapshot file
+     */
+    private static final String FILE_NAME = "dbcache_snapshot";
+    /**
+     * Magic number at the start of the file
+     */
+    private static final int MAGIC = 0x45424353;
+    /**
+     * Version of the file format, to increment on every change of it
+     */
+    private static final int FORMAT_VERSION = 3;
+    /**
+     * Charset used to encode strings
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Flag of a recurring expense that has a start date
+     */
+    private static final int FLAG_HAS_START_DATE = 1 << 1;
+    /**
+     * Flag of a recurring expense that has an end date
+     */
+    private static final int FLAG_HAS_END_DATE = 1 << 2;
+    /**
+     * Flag of a modified recurring expense
+     */
+    private static final int FLAG_MODIFIED = 1 << 3;
+
+// -------------------------------------------->
+
+    private DBCacheSnapshot()
+    {
+
+    }
+
+    /**
+     * Write the snapshot, replacing the previous one
+     *
+     * @param context
+     * @param dbGeneration the DB generation the months are up to date with
+     * @param months months to write
+     * @throws IOException on error while writing
+     */
+    @WorkerThread
+    static void write(@NonNull Context context, long dbGeneration, @NonNull List<Month> months) throws IOException
+    {
+        final File file = getFile(context);
+        final File tempFile = new File(file.getPath() + ".tmp");
+
+        try ( DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))) )
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(BuildConfig.VERSION_CODE);
+            out.writeLong(dbGeneration);
+            writeString(out, TimeZone.getDefault().getID());
+
+            out.writeInt(months.size());
+            for(Month month : months)
+            {
+                out.writeInt(month.month);
+
+                out.writeInt(month.balances.length);
+                for(long balance : month.balances)
+                {
+                    out.writeLong(balance);
+                }
+
+                writeMonthBlock(out, month.expenses);
+            }
+        }
+
+        if( !tempFile.renameTo(file) )
+        {
+            throw new IOException("Unable to rename snapshot file");
+        }
+    }
+
+    /**
+     * Read the snapshot, mapping the file in memory
+     *
+     * @param context
+     * @param dbGeneration the current DB generation
+     * @return the months of the snapshot, empty if there's no valid snapshot
+     */
+    @WorkerThread
+    @NonNull
+    static List<Month> read(@NonNull Context context, long dbGeneration)
+    {
+        final File file = getFile(context);
+        if( !file.exists() )
+        {
+            return Collections.emptyList();
+        }
+
+        try ( RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel() )
+        {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if( buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION || buffer.getInt() != BuildConfig.VERSION_CODE )
+            {
+                Logger.debug("DBCacheSnapshot: Snapshot from another version, ignoring it");
+                return Collections.emptyList();
+            }
+
+            if( buffer.getLong() != dbGeneration || !TimeZone.getDefault().getID().equals(readString(buffer)) )
+            {
+                Logger.debug("DBCacheSnapshot: Outdated snapshot, ignoring it");
+                return Collections.emptyList();
+            }
+
+            final int numberOfMonths = buffer.getInt();
+            final List<Month> months = new ArrayList<>(numberOfMonths);
+            for(int i = 0; i < numberOfMonths; i++)
+            {
+                final int month = buffer.getInt();
+
+                final long[] balances = new long[buffer.getInt()];
+                for(int day = 0; day < balances.length; day++)
+                {
+                    balances[day] = buffer.getLong();
+                }
+
+                months.add(new Month(month, readMonthBlock(buffer, DateHelper.getFirstEpochDayOfMonth(month), balances.length), balances));
+            }
+
+            return months;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // BufferUnderflowException or IndexOutOfBoundsException on a corrupted file
+            Logger.warning("DBCacheSnapshot: Error while reading snapshot", e);
+            delete(context);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Delete the snapshot, if any
+     *
+     * @param context
+     */
+    @WorkerThread
+    static void delete(@NonNull Context context)
+    {
+        final File file = getFile(context);
+        if( file.exists() && !file.delete() )
+        {
+            Logger.warning("DBCacheSnapshot: Unable to delete snapshot");
+        }
+    }
+
+// -------------------------------------------->
+
+    /**
+     * @param context
+     * @return the snapshot file
+     */
+    @NonNull
+    private static File getFile(@NonNull Context context)
+    {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Write the arrays of a month block
+     */
+    private static void writeMonthBlock(@NonNull DataOutputStream out, @NonNull MonthBlock block) throws IOException
+    {
+        out.writeInt(block.titles.length);
+        for(String title : block.titles)
+        {
+            writeString(out, title);
+        }
+
+        out.writeInt(block.recurringExpenses.length);
+        for(RecurringExpense recurringExpense : block.recurringExpenses)
+        {
+            out.writeByte((recurringExpense.getStartDate() != null ? FLAG_HAS_START_DATE : 0) | (recurringExpense.getEndDate() != null ? FLAG_HAS_END_DATE : 0) | (recurringExpense.isModified() ? FLAG_MODIFIED : 0));
+            out.writeLong(recurringExpense.getId());
+            writeString(out, recurringExpense.getTitle());
+            out.writeLong(recurringExpense.getAmount().getCents());
+            out.writeLong(recurringExpense.getRecurringDate().getTime());
+            out.writeByte(recurringExpense.getType().ordinal());
+            if( recurringExpense.getStartDate() != null )
+            {
+                out.writeLong(recurringExpense.getStartDate().getTime());
+            }
+            if( recurringExpense.getEndDate() != null )
+            {
+                out.writeLong(recurringExpense.getEndDate().getTime());
+            }
+        }
+
+        out.writeInt(block.size());
+        for(int i = 0; i < block.size(); i++)
+        {
+            out.writeLong(block.ids[i]);
+            out.writeLong(block.amounts[i]);
+            out.writeInt(block.dayOffsets[i]);
+            out.writeInt(block.titleIndices[i]);
+            out.writeInt(block.recurringIndices[i]);
+            out.writeInt(block.occurrenceDays[i]);
+        }
+    }
+
+    /**
+     * Read a month block written by {@link #writeMonthBlock(DataOutputStream, MonthBlock)}
+     */
+    @NonNull
+    private static MonthBlock readMonthBlock(@NonNull ByteBuffer buffer, int firstDay, int numberOfDays) throws BufferUnderflowException
+    {
+        final String[] titles = new String[buffer.getInt()];
+        for(int i = 0; i < titles.length; i++)
+        {
+            titles[i] = readString(buffer);
+        }
+
+        final RecurringExpense[] recurringExpenses = new RecurringExpense[buffer.getInt()];
+        for(int i = 0; i < recurringExpenses.length; i++)
+        {
+            final int flags = buffer.get();
+            final long id = buffer.getLong();
+            final String title = readString(buffer);
+            final Money amount = Money.ofCents(buffer.getLong());
+            final Date recurringDate = new Date(buffer.getLong());
+            final RecurringExpenseType type = RecurringExpenseType.values()[buffer.get()];
+            final Date startDate = (flags & FLAG_HAS_START_DATE) != 0 ? new Date(buffer.getLong()) : null;
+            final Date endDate = (flags & FLAG_HAS_END_DATE) != 0 ? new Date(buffer.getLong()) : null;
+
+            recurringExpenses[i] = new RecurringExpense(id, title, amount, recurringDate, type, (flags & FLAG_MODIFIED) != 0, startDate, endDate);
+        }
+
+        final int size = buffer.getInt();
+        final long[] ids = new long[size];
+        final long[] amounts = new long[size];
+        final int[] dayOffsets = new int[size];
+        final int[] titleIndices = new int[size];
+        final int[] recurringIndices = new int[size];
+        final int[] occurrenceDays = new int[size];
+        for(int i = 0; i < size; i++)
+        {
+            ids[i] = buffer.getLong();
+            amounts[i] = buffer.getLong();
+            dayOffsets[i] = buffer.getInt();
+            titleIndices[i] = buffer.getInt();
+            recurringIndices[i] = buffer.getInt();
+            occurrenceDays[i] = buffer.getInt();
+        }
+
+        return new MonthBlock(firstDay, numberOfDays, ids, amounts, dayOffsets, titleIndices, recurringIndices, occurrenceDays, titles, recurringExpenses);
+    }
+
+    /**
+     * Write a string as its UTF-8 length and bytes
+     */
+    private static void writeString(@NonNull DataOutputStream out, @NonNull String value) throws IOException
+    {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutputStream, String)}
+     */
+    @NonNull
+    private static String readString(@NonNull ByteBuffer buffer) throws BufferUnderflowException
+    {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+// -------------------------------------------->
+
+    /**
+     * Data of a month stored in the snapshot
+     */
+    static final class Month
+    {
+        /**
+         * Epoch month (see {@link DateHelper#getEpochMonth(int, int)})
+         */
+        final int month;
+        /**
+         * Expenses of the month
+         */
+        @NonNull
+        final MonthBlock expenses;
+        /**
+         * Balances in cents of each day of the month
+         */
+        @NonNull
+        final long[] balances;
+
+        Month(int month, @NonNull MonthBlock expenses, @NonNull long[] balances)
+        {
+            this.month = month;
+            this.expenses = expenses;
+            this.balances = balances;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model.db;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of {@link DBCache} and of the {@link DB} queries it saves, to tune the cache sizing.<br>
+ * <br>
+ * Recording only updates atomic counters so it can be done from any thread, including while
+ * binding views.
+ *
+ * @author Benoit LETONDOR
+ */
+public final class DBMetrics
+{
+    /**
+     * Number of cache reads that found their data
+     */
+    private static final AtomicLong cacheHits = new AtomicLong();
+    /**
+     * Number of cache reads that didn't find their data
+     */
+    private static final AtomicLong cacheMisses = new AtomicLong();
+    /**
+     * Number of cache invalidations (DB changes and wipes)
+     */
+    private static final AtomicLong invalidations = new AtomicLong();
+    /**
+     * Number of months evicted from the cache
+     */
+    private static final AtomicLong evictions = new AtomicLong();
+    /**
+     * Number of month loads waiting or running
+     */
+    private static final AtomicInteger queueDepth = new AtomicInteger();
+    /**
+     * Maximum value reached by {@link #queueDepth}
+     */
+    private static final AtomicInteger maxQueueDepth = new AtomicInteger();
+    /**
+     * Duration of the month loads of the cache
+     */
+    private static final LatencyHistogram monthLoads = new LatencyHistogram();
+    /**
+     * Duration of the day queries made by DB when the cache doesn't have the data
+     */
+    private static final LatencyHistogram dbDayQueries = new LatencyHistogram();
+
+// -------------------------------------------->
+
+    private DBMetrics()
+    {
+
+    }
+
+    /**
+     * Record a cache read
+     *
+     * @param hit true if the data was cached
+     */
+    static void recordCacheRead(boolean hit)
+    {
+        if( hit )
+        {
+            cacheHits.incrementAndGet();
+        }
+        else
+        {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record an invalidation of cached data
+     */
+    static void recordInvalidation()
+    {
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Record the eviction of a cached month
+     */
+    static void recordEviction()
+    {
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Record that a month load has been queued
+     */
+    static void recordLoadQueued()
+    {
+        final int depth = queueDepth.incrementAndGet();
+
+        int maxDepth;
+        do
+        {
+            maxDepth = maxQueueDepth.get();
+        }
+        while( depth > maxDepth && !maxQueueDepth.compareAndSet(maxDepth, depth) );
+    }
+
+    /**
+     * Record that a queued month load is done
+     */
+    static void recordLoadDone()
+    {
+        queueDepth.decrementAndGet();
+    }
+
+    /**
+     * Record the duration of a month load
+     *
+     * @param startNanos value of {@link System#nanoTime()} when the load started
+     */
+    static void recordMonthLoad(long startNanos)
+    {
+        monthLoads.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record the duration of a day query made by DB because the data wasn't cached
+     *
+     * @param startNanos value of {@link System#nanoTime()} when the query started
+     */
+    static void recordDBDayQuery(long startNanos)
+    {
+        dbDayQueries.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Reset all metrics, except the current queue depth
+     */
+    public static void reset()
+    {
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        invalidations.set(0);
+        evictions.set(0);
+        maxQueueDepth.set(queueDepth.get());
+        monthLoads.reset();
+        dbDayQueries.reset();
+    }
+
+    /**
+     * Get a human readable report of the metrics
+     *
+     * @return a multi-line report
+     */
+    @NonNull
+    public static String getReport()
+    {
+        final long hits = cacheHits.get();
+        final long misses = cacheMisses.get();
+        final long reads = hits + misses;
+
+        return String.format(Locale.US, "Cache reads: %d (hits: %d, misses: %d, hit rate: %.1f%%)", reads, hits, misses, reads == 0 ? 0.0 : hits * 100.0 / reads) +
+            "\nInvalidations: " + invalidations.get() +
+            "\nEvictions: " + evictions.get() +
+            "\nLoad queue depth: " + queueDepth.get() + " (max: " + maxQueueDepth.get() + ")" +
+            "\n\nMonth loads: " + monthLoads +
+            "\n\nDB day queries: " + dbDayQueries;
+    }
+
+// -------------------------------------------->
+
+    /**
+     * Histogram of durations with exponential buckets in ms
+     */
+    private static final class LatencyHistogram
+    {
+        /**
+         * Upper bound (exclusive) of each bucket in ms, the last bucket having no upper bound
+         */
+        private static final long[] BUCKETS_UPPER_BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500 };
+
+        /**
+         * Number of durations in each bucket
+         */
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS_UPPER_BOUNDS_MS.length + 1);
+        /**
+         * Sum of all durations in ns
+         */
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private void record(long durationNanos)
+        {
+            final long durationMs = durationNanos / 1000000;
+
+            int bucket = 0;
+            while( bucket < BUCKETS_UPPER_BOUNDS_MS.length && durationMs >= BUCKETS_UPPER_BOUNDS_MS[bucket] )
+            {
+                bucket++;
+            }
+
+            counts.incrementAndGet(bucket);
+            totalNanos.addAndGet(durationNanos);
+        }
+
+        private void reset()
+        {
+            for(int i = 0; i < counts.length(); i++)
+            {
+                counts.set(i, 0);
+            }
+
+            totalNanos.set(0);
+        }
+
+        @NonNull
+        @Override
+        public String toString()
+        {
+            long count = 0;
+            for(int i = 0; i < counts.length(); i++)
+            {
+                count += counts.get(i);
+            }
+
+            if( count == 0 )
+            {
+                return "none";
+            }
+
+            final StringBuilder builder = new StringBuilder(String.format(Locale.US, "%d, avg %.2f ms", count, totalNanos.get() / 1000000.0 / count));
+            for(int i = 0; i < counts.length(); i++)
+            {
+                final long bucketCount = counts.get(i);
+                if( bucketCount > 0 )
+                {
+                    builder.append("\n  ")
+                        .append(i < BUCKETS_UPPER_BOUNDS_MS.length ? "< " + BUCKETS_UPPER_BOUNDS_MS[i] : ">= " + BUCKETS_UPPER_BOUNDS_MS[BUCKETS_UPPER_BOUNDS_MS.length - 1])
+                        .append(" ms: ")
+                        .append(bucketCount);
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import androidx.annotation.NonNull;
+
+import com.benoitletondor.easybudgetapp.helper.DateHelper;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the {@link SQLiteDBHelper#TABLE_BALANCE} table that contains the cumulated balance
+ * (in cents) of all stored expenses up to each day that has at least one expense. The balance of any
+ * day is the value of the last row before or at this day. Occurrences of recurring expenses are not
+ * stored: their contribution must be added using the {@link com.benoitletondor.easybudgetapp.model.RecurrenceEngine}.
+ * <p>
+ * Every write to the expense table must be reported here (inside the same transaction) as
+ * balance deltas per day.
+ *
+ * @author Benoit LETONDOR
+ */
+final class DailyBalanceTable
+{
+    /**
+     * Length of a day in ms
+     */
+    static final long DAY_LENGTH = 24 * 60 * 60 * 1000L;
+
+// -------------------------------------------->
+
+    private DailyBalanceTable()
+    {
+
+    }
+
+    /**
+     * Get the key of the day of the given timestamp, as stored in {@link SQLiteDBHelper#COLUMN_BALANCE_DAY}
+     *
+     * @param timestamp a timestamp stored into the expense table
+     * @return the GMT day timestamp
+     */
+    static long getDayKey(long timestamp)
+    {
+        return getDayKeyForEpochDay(DateHelper.getEpochDay(timestamp));
+    }
+
+    /**
+     * Get the key of the given epoch day (see {@link DateHelper#getEpochDay(long)})
+     *
+     * @param epochDay
+     * @return the GMT day timestamp
+     */
+    static long getDayKeyForEpochDay(int epochDay)
+    {
+        return epochDay * DAY_LENGTH;
+    }
+
+    /**
+     * Get the epoch day of the given day key
+     *
+     * @param day the day key (see {@link #getDayKey(long)})
+     * @return the epoch day
+     */
+    static int getEpochDayForDayKey(long day)
+    {
+        return (int) (day / DAY_LENGTH);
+    }
+
+    /**
+     * Add an amount delta to the given deltas map
+     *
+     * @param deltas map of day key / delta in cents
+     * @param timestamp timestamp of the expense, as stored into the expense table
+     * @param delta the amount delta in cents
+     */
+    static void addDelta(@NonNull TreeMap<Long, Long> deltas, long timestamp, long delta)
+    {
+        addDayDelta(deltas, getDayKey(timestamp), delta);
+    }
+
+    /**
+     * Add an amount delta to the given deltas map
+     *
+     * @param deltas map of day key / delta in cents
+     * @param day the day key (see {@link #getDayKey(long)})
+     * @param delta the amount delta in cents
+     */
+    private static void addDayDelta(@NonNull TreeMap<Long, Long> deltas, long day, long delta)
+    {
+        Long existingDelta = deltas.get(day);
+        deltas.put(day, existingDelta != null ? existingDelta + delta : delta);
+    }
+
+    /**
+     * Get the balance for the given day
+     *
+     * @param database
+     * @param day the day key (see {@link #getDayKey(long)})
+     * @return the balance in cents
+     */
+    static long getBalance(@NonNull SQLiteDatabase database, long day)
+    {
+        try ( Cursor cursor = database.rawQuery("SELECT " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " FROM " + SQLiteDBHelper.TABLE_BALANCE + " WHERE " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " <= " + day + " ORDER BY " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " DESC LIMIT 1", null) )
+        {
+            if( cursor.moveToFirst() )
+            {
+                return cursor.getLong(0);
+            }
+
+            return 0;
+        }
+    }
+
+    /**
+     * Get the balances for the given consecutive days, using one query for the balance before the
+     * first day and one for the rows between the first and the last day
+     *
+     * @param database
+     * @param days sorted day keys (see {@link #getDayKey(long)})
+     * @return the balance in cents of each day
+     */
+    @NonNull
+    static long[] getBalances(@NonNull SQLiteDatabase database, @NonNull long[] days)
+    {
+        final long[] balances = new long[days.length];
+        if( days.length == 0 )
+        {
+            return balances;
+        }
+
+        long balance = getBalance(database, days[0] - 1);
+
+        try ( Cursor cursor = database.rawQuery("SELECT " + SQLiteDBHelper.COLUMN_BALANCE_DAY + ", " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " FROM " + SQLiteDBHelper.TABLE_BALANCE + " WHERE " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " >= " + days[0] + " AND " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " <= " + days[days.length - 1] + " ORDER BY " + SQLiteDBHelper.COLUMN_BALANCE_DAY, null) )
+        {
+            boolean hasRow = cursor.moveToNext();
+            for (int i = 0; i < days.length; i++)
+            {
+                // Take the last row happening before or at this day
+                while( hasRow && cursor.getLong(0) <= days[i] )
+                {
+                    balance = cursor.getLong(1);
+                    hasRow = cursor.moveToNext();
+                }
+
+                balances[i] = balance;
+            }
+        }
+
+        return balances;
+    }
+
+    /**
+     * Apply the given deltas to the balance table. Should be called inside the transaction that
+     * modified the expense table. The given map is not modified, so that it can be used afterwards
+     * to update {@link DBCache}.
+     *
+     * @param database
+     * @param changedDeltas map of day key / delta in cents
+     */
+    static void applyDeltas(@NonNull SQLiteDatabase database, @NonNull TreeMap<Long, Long> changedDeltas)
+    {
+        // Ignore days that are not modified
+        final TreeMap<Long, Long> deltas = new TreeMap<>();
+        for(Map.Entry<Long, Long> delta : changedDeltas.entrySet())
+        {
+            if( delta.getValue() != 0 )
+            {
+                deltas.put(delta.getKey(), delta.getValue());
+            }
+        }
+
+        if( deltas.isEmpty() )
+        {
+            return;
+        }
+
+        // First create missing rows for the modified days, using the balance of the previous day
+        try ( SQLiteStatement insertStatement = database.compileStatement("INSERT OR IGNORE INTO " + SQLiteDBHelper.TABLE_BALANCE + " (" + SQLiteDBHelper.COLUMN_BALANCE_DAY + ", " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + ") "
+            + "SELECT ?1, IFNULL((SELECT " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " FROM " + SQLiteDBHelper.TABLE_BALANCE + " WHERE " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " < ?1 ORDER BY " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " DESC LIMIT 1), 0)") )
+        {
+            for(Long day : deltas.keySet())
+            {
+                insertStatement.bindLong(1, day);
+                insertStatement.executeInsert();
+            }
+        }
+
+        // Then shift every row by the sum of the deltas happening before or at this row
+        try ( SQLiteStatement rangeUpdateStatement = database.compileStatement("UPDATE " + SQLiteDBHelper.TABLE_BALANCE + " SET " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " = " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " + ? WHERE " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " >= ? AND " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " < ?");
+              SQLiteStatement tailUpdateStatement = database.compileStatement("UPDATE " + SQLiteDBHelper.TABLE_BALANCE + " SET " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " = " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + " + ? WHERE " + SQLiteDBHelper.COLUMN_BALANCE_DAY + " >= ?") )
+        {
+            long cumulatedDelta = 0;
+
+            Iterator<Map.Entry<Long, Long>> iterator = deltas.entrySet().iterator();
+            Map.Entry<Long, Long> entry = iterator.next();
+            while( entry != null )
+            {
+                cumulatedDelta += entry.getValue();
+
+                Map.Entry<Long, Long> nextEntry = iterator.hasNext() ? iterator.next() : null;
+                if( nextEntry != null )
+                {
+                    rangeUpdateStatement.bindLong(1, cumulatedDelta);
+                    rangeUpdateStatement.bindLong(2, entry.getKey());
+                    rangeUpdateStatement.bindLong(3, nextEntry.getKey());
+                    rangeUpdateStatement.executeUpdateDelete();
+                }
+                else
+                {
+                    tailUpdateStatement.bindLong(1, cumulatedDelta);
+                    tailUpdateStatement.bindLong(2, entry.getKey());
+                    tailUpdateStatement.executeUpdateDelete();
+                }
+
+                entry = nextEntry;
+            }
+        }
+    }
+
+    /**
+     * Add to the given deltas the contribution to the balance of the valid expenses matching the
+     * given where clause: their amount at their date and, for exceptions of a recurring expense,
+     * the removal of the computed occurrence they replace. Both are local days of the current
+     * timezone, the stored ones are recomputed when it changes (see {@link DB#onTimeZoneChanged()}).
+     *
+     * @param database
+     * @param whereClause where clause on the expense table (columns must be prefixed by the table name)
+     * @param deltas map of day key / delta in cents
+     * @param sign 1 to add the contribution of the expenses, -1 to remove it
+     */
+    static void collectDeltas(@NonNull SQLiteDatabase database, @NonNull String whereClause, @NonNull TreeMap<Long, Long> deltas, int sign)
+    {
+        try ( Cursor cursor = database.rawQuery("SELECT " + SQLiteDBHelper.COLUMN_EXPENSE_DAY + ", SUM(" + SQLiteDBHelper.COLUMN_EXPENSE_AMOUNT + ") FROM " + SQLiteDBHelper.TABLE_EXPENSE + " WHERE (" + whereClause + ") AND " + SQLiteDBHelper.CONDITION_VALID_EXPENSE + " GROUP BY " + SQLiteDBHelper.COLUMN_EXPENSE_DAY, null) )
+        {
+            while( cursor.moveToNext() )
+            {
+                addDayDelta(deltas, getDayKeyForEpochDay(cursor.getInt(0)), sign * cursor.getLong(1));
+            }
+        }
+
+        try ( Cursor cursor = database.rawQuery("SELECT " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE + ", SUM(rec." + SQLiteDBHelper.COLUMN_RECURRING_AMOUNT + ") FROM " + SQLiteDBHelper.TABLE_EXPENSE
+            + " JOIN " + SQLiteDBHelper.TABLE_RECURRING_EXPENSE + " rec ON rec." + SQLiteDBHelper.COLUMN_RECURRING_DB_ID + " = " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_RECURRING_ID
+            + " WHERE (" + whereClause + ") AND " + SQLiteDBHelper.CONDITION_VALID_EXPENSE + " GROUP BY " + SQLiteDBHelper.TABLE_EXPENSE + "." + SQLiteDBHelper.COLUMN_EXPENSE_OCCURRENCE_DATE, null) )
+        {
+            while( cursor.moveToNext() )
+            {
+                addDelta(deltas, cursor.getLong(0), -sign * cursor.getLong(1));
+            }
+        }
+    }
+
+    /**
+     * Rebuild the whole balance table from the content of the expense table
+     *
+     * @param database
+     */
+    static void rebuild(@NonNull SQLiteDatabase database)
+    {
+        database.delete(SQLiteDBHelper.TABLE_BALANCE, null, null);
+
+        final TreeMap<Long, Long> deltas = new TreeMap<>();
+        collectDeltas(database, "1", deltas, 1);
+
+        try ( SQLiteStatement insertStatement = database.compileStatement("INSERT INTO " + SQLiteDBHelper.TABLE_BALANCE + " (" + SQLiteDBHelper.COLUMN_BALANCE_DAY + ", " + SQLiteDBHelper.COLUMN_BALANCE_AMOUNT + ") VALUES (?, ?)") )
+        {
+            long balance = 0;
+            for(Map.Entry<Long, Long> delta : deltas.entrySet())
+            {
+                balance += delta.getValue();
+
+                insertStatement.bindLong(1, delta.getKey());
+                insertStatement.bindLong(2, balance);
+                insertStatement.executeInsert();
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.model.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+
+import com.benoitletondor.easybudgetapp.helper.DateHelper;
+import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
+import com.benoitletondor.easybudgetapp.model.RecurringExpense;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable compact representation of the expenses of a month, stored as parallel arrays sorted by
+ * day. Titles and recurring expenses are stored once per month and referenced by index.<br>
+ * <br>
+ * {@link Expense} objects are only created when the expenses of a day are requested with
+ * {@link #getExpenses(int)}.
+ *
+ * @author Benoit LETONDOR
+ */
+final class MonthBlock
+{
+    /**
+     * Value of {@link #ids} for an expense that isn't stored (computed occurrence of a recurring expense)
+     */
+    static final long NO_ID = -1;
+    /**
+     * Value of {@link #recurringIndices} for an expense that isn't recurring
+     */
+    static final int NO_RECURRING = -1;
+    /**
+     * Value of {@link #occurrenceDays} for an expense that has no occurrence date
+     */
+    static final int NO_OCCURRENCE = Integer.MIN_VALUE;
+
+    /**
+     * Estimated size of an array or object header in bytes
+     */
+    private static final int HEADER_SIZE = 16;
+    /**
+     * Estimated size of the arrays entries of an expense in bytes
+     */
+    private static final int EXPENSE_ENTRY_SIZE = 8 + 8 + 4 + 4 + 4 + 4;
+    /**
+     * Estimated size of a recurring expense in bytes
+     */
+    private static final int RECURRING_ENTRY_SIZE = 120;
+
+// -------------------------------------------->
+
+    /**
+     * Epoch day of the first day of the month
+     */
+    final int firstDay;
+    /**
+     * Number of days of the month
+     */
+    final int numberOfDays;
+    /**
+     * Id of each expense, {@link #NO_ID} if none
+     */
+    @NonNull
+    final long[] ids;
+    /**
+     * Amount of each expense in cents
+     */
+    @NonNull
+    final long[] amounts;
+    /**
+     * Day of each expense, as an offset from {@link #firstDay}. Sorted in ascending order.
+     */
+    @NonNull
+    final int[] dayOffsets;
+    /**
+     * Index of the title of each expense in {@link #titles}
+     */
+    @NonNull
+    final int[] titleIndices;
+    /**
+     * Index of the recurring expense of each expense in {@link #recurringExpenses}, {@link #NO_RECURRING} if none
+     */
+    @NonNull
+    final int[] recurringIndices;
+    /**
+     * Epoch day of the occurrence date of each expense, {@link #NO_OCCURRENCE} if none
+     */
+    @NonNull
+    final int[] occurrenceDays;
+    /**
+     * Distinct titles of the expenses of the month
+     */
+    @NonNull
+    final String[] titles;
+    /**
+     * Distinct recurring expenses of the expenses of the month
+     */
+    @NonNull
+    final RecurringExpense[] recurringExpenses;
+
+// -------------------------------------------->
+
+    MonthBlock(int firstDay, int numberOfDays, @NonNull long[] ids, @NonNull long[] amounts, @NonNull int[] dayOffsets, @NonNull int[] titleIndices, @NonNull int[] recurringIndices, @NonNull int[] occurrenceDays, @NonNull String[] titles, @NonNull RecurringExpense[] recurringExpenses)
+    {
+        this.firstDay = firstDay;
+        this.numberOfDays = numberOfDays;
+        this.ids = ids;
+        this.amounts = amounts;
+        this.dayOffsets = dayOffsets;
+        this.titleIndices = titleIndices;
+        this.recurringIndices = recurringIndices;
+        this.occurrenceDays = occurrenceDays;
+        this.titles = titles;
+        this.recurringExpenses = recurringExpenses;
+    }
+
+    /**
+     * @return number of expenses of the month
+     */
+    int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     * Does the given day have expenses
+     *
+     * @param dayOffset day as an offset from {@link #firstDay}
+     * @return true if the day has at least one expense
+     */
+    boolean hasExpenses(int dayOffset)
+    {
+        final int start = indexOfDay(dayOffset);
+        return start < dayOffsets.length && dayOffsets[start] == dayOffset;
+    }
+
+    /**
+     * Create the expenses of the given day
+     *
+     * @param dayOffset day as an offset from {@link #firstDay}
+     * @return a new list of new expenses
+     */
+    @NonNull
+    List<Expense> getExpenses(int dayOffset)
+    {
+        final int start = indexOfDay(dayOffset);
+        final int end = indexOfDay(dayOffset + 1);
+
+        final List<Expense> expenses = new ArrayList<>(end - start);
+        for(int i = start; i < end; i++)
+        {
+            expenses.add(getExpense(i));
+        }
+
+        return expenses;
+    }
+
+    /**
+     * Get a copy of this month with the expenses of the given day replaced
+     *
+     * @param dayOffset day as an offset from {@link #firstDay}
+     * @param expenses new expenses of the day
+     * @return a new month
+     */
+    @NonNull
+    MonthBlock withExpensesForDay(int dayOffset, @NonNull List<Expense> expenses)
+    {
+        final int start = indexOfDay(dayOffset);
+        final int end = indexOfDay(dayOffset + 1);
+
+        final Builder builder = new Builder(firstDay, numberOfDays, size() - (end - start) + expenses.size());
+        for(int i = 0; i < start; i++)
+        {
+            builder.add(this, i);
+        }
+
+        for(Expense expense : expenses)
+        {
+            builder.add(dayOffset, expense);
+        }
+
+        for(int i = end; i < size(); i++)
+        {
+            builder.add(this, i);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return the estimated memory used by this month in bytes
+     */
+    long getEstimatedSize()
+    {
+        long size = HEADER_SIZE * 9 + (long) EXPENSE_ENTRY_SIZE * ids.length + (long) RECURRING_ENTRY_SIZE * recurringExpenses.length;
+        for(String title : titles)
+        {
+            size += HEADER_SIZE * 2 + 2 * title.length();
+        }
+
+        return size;
+    }
+
+// -------------------------------------------->
+
+    /**
+     * @param dayOffset day as an offset from {@link #firstDay}
+     * @return index of the first expense on or after the given day
+     */
+    private int indexOfDay(int dayOffset)
+    {
+        int low = 0;
+        int high = dayOffsets.length;
+        while( low < high )
+        {
+            final int middle = (low + high) >>> 1;
+            if( dayOffsets[middle] < dayOffset )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @param index index of the expense
+     * @return a new expense created from the arrays
+     */
+    @NonNull
+    private Expense getExpense(int index)
+    {
+        return new Expense(
+            ids[index] != NO_ID ? ids[index] : null,
+            titles[titleIndices[index]],
+            Money.ofCents(amounts[index]),
+            DateHelper.getDateForEpochDay(firstDay + dayOffsets[index]),
+            recurringIndices[index] != NO_RECURRING ? recurringExpenses[recurringIndices[index]] : null,
+            occurrenceDays[index] != NO_OCCURRENCE ? DateHelper.getDateForEpochDay(occurrenceDays[index]) : null
+        );
+    }
+
+// -------------------------------------------->
+
+    /**
+     * Builder of {@link MonthBlock}, expenses can be added in any order
+     */
+    static final class Builder
+    {
+        private final int firstDay;
+        private final int numberOfDays;
+
+        private int size = 0;
+        private long[] ids;
+        private long[] amounts;
+        private int[] dayOffsets;
+        private int[] titleIndices;
+        private int[] recurringIndices;
+        private int[] occurrenceDays;
+
+        private final List<String> titles = new ArrayList<>();
+        private final Map<String, Integer> titleIndexByTitle = new HashMap<>();
+        private final List<RecurringExpense> recurringExpenses = new ArrayList<>();
+        private final LongSparseArray<Integer> recurringIndexById = new LongSparseArray<>();
+
+        /**
+         * @param firstDay epoch day of the first day of the month
+         * @param numberOfDays number of days of the month
+         * @param capacity expected number of expenses
+         */
+        Builder(int firstDay, int numberOfDays, int capacity)
+        {
+            this.firstDay = firstDay;
+            this.numberOfDays = numberOfDays;
+
+            ids = new long[capacity];
+            amounts = new long[capacity];
+            dayOffsets = new int[capacity];
+            titleIndices = new int[capacity];
+            recurringIndices = new int[capacity];
+            occurrenceDays = new int[capacity];
+        }
+
+        /**
+         * Add an expense
+         *
+         * @param dayOffset day of the expense as an offset from the first day of the month
+         * @param expense the expense
+         */
+        void add(int dayOffset, @NonNull Expense expense)
+        {
+            add(dayOffset, expense.getId() != null ? expense.getId() : NO_ID, expense.getAmount().getCents(), expense.getTitle(),
+                expense.getAssociatedRecurringExpense(), expense.getOccurrenceDate() != null ? DateHelper.getEpochDay(expense.getOccurrenceDate()) : NO_OCCURRENCE);
+        }
+
+        /**
+         * Add an expense of another month block of the same month
+         *
+         * @param block the other block
+         * @param index index of the expense in the other block
+         */
+        void add(@NonNull MonthBlock block, int index)
+        {
+            add(block.dayOffsets[index], block.ids[index], block.amounts[index], block.titles[block.titleIndices[index]],
+                block.recurringIndices[index] != NO_RECURRING ? block.recurringExpenses[block.recurringIndices[index]] : null, block.occurrenceDays[index]);
+        }
+
+        private void add(int dayOffset, long id, long amount, @NonNull String title, @Nullable RecurringExpense recurringExpense, int occurrenceDay)
+        {
+            if( size == ids.length )
+            {
+                final int capacity = Math.max(8, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                dayOffsets = Arrays.copyOf(dayOffsets, capacity);
+                titleIndices = Arrays.copyOf(titleIndices, capacity);
+                recurringIndices = Arrays.copyOf(recurringIndices, capacity);
+                occurrenceDays = Arrays.copyOf(occurrenceDays, capacity);
+            }
+
+            Integer titleIndex = titleIndexByTitle.get(title);
+            if( titleIndex == null )
+            {
+                titleIndex = titles.size();
+                titles.add(title);
+                titleIndexByTitle.put(title, titleIndex);
+            }
+
+            int recurringIndex = NO_RECURRING;
+            if( recurringExpense != null )
+            {
+                Integer index = recurringIndexById.get(recurringExpense.getId());
+                if( index == null )
+                {
+                    index = recurringExpenses.size();
+                    recurringExpenses.add(recurringExpense);
+                    recurringIndexById.put(recurringExpense.getId(), index);
+                }
+
+                recurringIndex = index;
+            }
+
+            ids[size] = id;
+            amounts[size] = amount;
+            dayOffsets[size] = dayOffset;
+            titleIndices[size] = titleIndex;
+            recurringIndices[size] = recurringIndex;
+            occurrenceDays[size] = occurrenceDay;
+            size++;
+        }
+
+        /**
+         * Build the block, sorting expenses by day while keeping the order of each day
+         *
+         * @return the block
+         */
+        @NonNull
+        MonthBlock build()
+        {
+            // Counting sort on the day, which is stable
+            final int[] starts = new int[numberOfDays + 1];
+            for(int i = 0; i < size; i++)
+            {
+                starts[dayOffsets[i] + 1]++;
+            }
+            for(int day = 0; day < numberOfDays; day++)
+            {
+                starts[day + 1] += starts[day];
+            }
+
+            final long[] sortedIds = new long[size];
+            final long[] sortedAmounts = new long[size];
+            final int[] sortedDayOffsets = new int[size];
+            final int[] sortedTitleIndices = new int[size];
+            final int[] sortedRecurringIndices = new int[size];
+            final int[] sortedOccurrenceDays = new int[size];
+            for(int i = 0; i < size; i++)
+            {
+                final int index = starts[dayOffsets[i]]++;
+
+                sortedIds[index] = ids[i];
+                sortedAmounts[index] = amounts[i];
+                sortedDayOffsets[index] = dayOffsets[i];
+                sortedTitleIndices[index] = titleIndices[i];
+                sortedRecurringIndices[index] = recurringIndices[i];
+                sortedOccurrenceDays[index] = occurrenceDays[i];
+            }
+
+            return new MonthBlock(firstDay, numberOfDays, sortedIds, sortedAmounts, sortedDayOffsets, sortedTitleIndices, sortedRecurringIndices, sortedOccurrenceDays,
+                titles.toArray(new String[0]), recurringExpenses.toArray(new RecurringExpense[0]));
+        }
+    }
+}
@@ -16,13 +16,26 @@
 
 package com.benoitletondor.easybudgetapp.model.db;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import androidx.annotation.NonNull;
 
+import com.benoitletondor.easybudgetapp.helper.DateHelper;
+import com.benoitletondor.easybudgetapp.model.RecurrenceEngine;
+import com.benoitletondor.easybudgetapp.model.RecurringExpense;
 import com.benoitletondor.easybudgetapp.model.RecurringExpenseType;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Benoit LETONDOR
  */
@@ -33,7 +46,10 @@ public final class SQLiteDBHelper extends SQLiteOpenHelper
     protected static final String COLUMN_EXPENSE_TITLE          = "title";
     protected static final String COLUMN_EXPENSE_AMOUNT         = "amount";
     protected static final String COLUMN_EXPENSE_DATE           = "date";
+    protected static final String COLUMN_EXPENSE_DAY            = "day";
     protected static final String COLUMN_EXPENSE_RECURRING_ID   = "monthly_id";
+    protected static final String COLUMN_EXPENSE_OCCURRENCE_DATE    = "occurrence_date";
+    protected static final String COLUMN_EXPENSE_OCCURRENCE_DELETED = "occurrence_deleted";
 
     protected static final String TABLE_RECURRING_EXPENSE           = "monthlyexpense";
     protected static final String COLUMN_RECURRING_DB_ID            = "_expense_id";
@@ -42,17 +58,68 @@ public final class SQLiteDBHelper extends SQLiteOpenHelper
     protected static final String COLUMN_RECURRING_RECURRING_DATE   = "recurringDate";
     protected static final String COLUMN_RECURRING_MODIFIED         = "modified";
     protected static final String COLUMN_RECURRING_TYPE             = "type";
+    protected static final String COLUMN_RECURRING_START_DATE       = "startDate";
+    protected static final String COLUMN_RECURRING_END_DATE         = "endDate";
+    protected static final String COLUMN_RECURRING_DELETED          = "deleted";
+
+    protected static final String TABLE_BALANCE                 = "daybalance";
+    protected static final String COLUMN_BALANCE_DAY            = "day";
+    protected static final String COLUMN_BALANCE_AMOUNT         = "balance";
+
+    /**
+     * Condition on the recurring expense table matching recurring expenses that are not deleted
+     * (deleted ones are kept until purged so that the delete can be cancelled)
+     */
+    protected static final String CONDITION_ACTIVE_RECURRING_EXPENSE = COLUMN_RECURRING_DELETED + " = 0";
+    /**
+     * Condition on the expense table matching expenses that are part of the budget: one time expenses
+     * and exceptions of an existing recurring expense whose occurrence is within its start and end dates
+     */
+    protected static final String CONDITION_VALID_EXPENSE = "(" + TABLE_EXPENSE + "." + COLUMN_EXPENSE_RECURRING_ID + " IS NULL OR EXISTS (SELECT 1 FROM " + TABLE_RECURRING_EXPENSE + " r WHERE r." + COLUMN_RECURRING_DB_ID + " = " + TABLE_EXPENSE + "." + COLUMN_EXPENSE_RECURRING_ID + " AND r." + COLUMN_RECURRING_DELETED + " = 0 AND "
+        + "(r." + COLUMN_RECURRING_START_DATE + " IS NULL OR " + TABLE_EXPENSE + "." + COLUMN_EXPENSE_OCCURRENCE_DATE + " >= r." + COLUMN_RECURRING_START_DATE + ") AND "
+        + "(r." + COLUMN_RECURRING_END_DATE + " IS NULL OR " + TABLE_EXPENSE + "." + COLUMN_EXPENSE_OCCURRENCE_DATE + " <= r." + COLUMN_RECURRING_END_DATE + ")))";
+    /**
+     * Condition on the expense table matching expenses that should be displayed to the user (valid and not a deleted occurrence)
+     */
+    protected static final String CONDITION_DISPLAYED_EXPENSE = CONDITION_VALID_EXPENSE + " AND " + TABLE_EXPENSE + "." + COLUMN_EXPENSE_OCCURRENCE_DELETED + " = 0";
 
 // -------------------------------------------->
 
     private static final String DATABASE_NAME    = "easybudget.db";
-    private static final int    DATABASE_VERSION = 3;
+    private static final int    DATABASE_VERSION = 8;
+
+// -------------------------------------------->
+
+    /**
+     * Instance shared by the whole app, so that only one connection pool is opened
+     */
+    private static SQLiteDBHelper instance;
 
 // -------------------------------------------->
 
-    public SQLiteDBHelper(@NonNull Context context)
+    private SQLiteDBHelper(@NonNull Context context)
     {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        // Allow reads from background threads to run concurrently with writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Get the helper shared by the whole app. The database it opens should never be closed.
+     *
+     * @param context
+     * @return
+     */
+    @NonNull
+    public synchronized static SQLiteDBHelper getInstance(@NonNull Context context)
+    {
+        if( instance == null )
+        {
+            instance = new SQLiteDBHelper(context.getApplicationContext());
+        }
+
+        return instance;
     }
 
     @Override
@@ -64,9 +131,12 @@ public final class SQLiteDBHelper extends SQLiteOpenHelper
             + COLUMN_EXPENSE_TITLE + " text not null, "
             + COLUMN_EXPENSE_AMOUNT + " integer not null, "
             + COLUMN_EXPENSE_DATE + " integer not null, "
-            + COLUMN_EXPENSE_RECURRING_ID + " integer null );");
+            + COLUMN_EXPENSE_DAY + " integer not null, "
+            + COLUMN_EXPENSE_RECURRING_ID + " integer null, "
+            + COLUMN_EXPENSE_OCCURRENCE_DATE + " integer null, "
+            + COLUMN_EXPENSE_OCCURRENCE_DELETED + " integer not null DEFAULT 0 );");
 
-        database.execSQL("CREATE INDEX D_i on "+ TABLE_EXPENSE +"("+ COLUMN_EXPENSE_DATE +");");
+        createExpenseIndexes(database);
 
         database.execSQL("create table "
             + TABLE_RECURRING_EXPENSE + "("
@@ -75,12 +145,29 @@ public final class SQLiteDBHelper extends SQLiteOpenHelper
             + COLUMN_RECURRING_AMOUNT + " integer not null, "
             + COLUMN_RECURRING_MODIFIED + " integer not null, "
             + COLUMN_RECURRING_RECURRING_DATE + " integer not null, "
-            + COLUMN_RECURRING_TYPE + " text not null DEFAULT '"+RecurringExpenseType.MONTHLY+"');");
+            + COLUMN_RECURRING_TYPE + " text not null DEFAULT '"+RecurringExpenseType.MONTHLY+"', "
+            + COLUMN_RECURRING_START_DATE + " integer null, "
+            + COLUMN_RECURRING_END_DATE + " integer null, "
+            + COLUMN_RECURRING_DELETED + " integer not null DEFAULT 0 );");
+
+        createBalanceTable(database);
     }
 
 	@Override
 	public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion)
 	{
+        if( oldVersion < 8 )
+        {
+            // Added first since every other migration (and the balance table) relies on the day column
+            database.execSQL("ALTER TABLE "+TABLE_EXPENSE+" ADD COLUMN "+COLUMN_EXPENSE_DAY+" integer not null DEFAULT 0");
+            backfillExpenseDays(database);
+
+            // The date index is replaced by the day one. Other indexes are left to the migrations
+            // below, since the columns they cover may not exist yet
+            database.execSQL("DROP INDEX IF EXISTS D_A_i");
+            createExpenseDayIndex(database);
+        }
+
         if( oldVersion<2 )
         {
             database.execSQL("UPDATE "+TABLE_EXPENSE+" SET "+COLUMN_EXPENSE_AMOUNT+" = "+COLUMN_EXPENSE_AMOUNT+" * 100");
@@ -91,5 +178,276 @@ public final class SQLiteDBHelper extends SQLiteOpenHelper
         {
             database.execSQL("ALTER TABLE "+TABLE_RECURRING_EXPENSE+" ADD COLUMN "+COLUMN_RECURRING_TYPE+" text not null DEFAULT '"+RecurringExpenseType.MONTHLY+"'");
         }
+
+        if( oldVersion < 4 )
+        {
+            createBalanceTable(database);
+        }
+
+        if( oldVersion < 5 )
+        {
+            database.execSQL("ALTER TABLE "+TABLE_EXPENSE+" ADD COLUMN "+COLUMN_EXPENSE_OCCURRENCE_DATE+" integer null");
+            database.execSQL("ALTER TABLE "+TABLE_EXPENSE+" ADD COLUMN "+COLUMN_EXPENSE_OCCURRENCE_DELETED+" integer not null DEFAULT 0");
+            database.execSQL("ALTER TABLE "+TABLE_RECURRING_EXPENSE+" ADD COLUMN "+COLUMN_RECURRING_START_DATE+" integer null");
+            database.execSQL("ALTER TABLE "+TABLE_RECURRING_EXPENSE+" ADD COLUMN "+COLUMN_RECURRING_END_DATE+" integer null");
+            // Needed by the valid expense condition used to rebuild the balance table
+            database.execSQL("ALTER TABLE "+TABLE_RECURRING_EXPENSE+" ADD COLUMN "+COLUMN_RECURRING_DELETED+" integer not null DEFAULT 0");
+
+            // Indexes are needed by the migration queries on large databases
+            createExpenseIndexes(database);
+
+            migrateFlattenedRecurringExpenses(database);
+            DailyBalanceTable.rebuild(database);
+        }
+
+        if( oldVersion < 6 )
+        {
+            // Creating an index doesn't rewrite the table, the date index is replaced by the covering one
+            createExpenseIndexes(database);
+            database.execSQL("DROP INDEX IF EXISTS D_i");
+        }
+
+        if( oldVersion >= 5 && oldVersion < 7 )
+        {
+            database.execSQL("ALTER TABLE "+TABLE_RECURRING_EXPENSE+" ADD COLUMN "+COLUMN_RECURRING_DELETED+" integer not null DEFAULT 0");
+
+            // Exceptions of recurring expenses deleted before they were kept as deleted are useless
+            database.execSQL("DELETE FROM "+TABLE_EXPENSE+" WHERE "+COLUMN_EXPENSE_RECURRING_ID+" IS NOT NULL AND "+COLUMN_EXPENSE_RECURRING_ID+" NOT IN (SELECT "+COLUMN_RECURRING_DB_ID+" FROM "+TABLE_RECURRING_EXPENSE+")");
+        }
 	}
+
+    /**
+     * Migrate recurring expenses that were flattened into the expense table (up to 240, 120 or 100
+     * rows depending on the type) to rules computed by the {@link RecurrenceEngine}: rows matching
+     * their occurrence are removed, modified ones are kept as exceptions, missing ones are stored
+     * as deleted occurrences and rows with a modified date are detached from their recurring expense.
+     *
+     * @param database
+     */
+    private static void migrateFlattenedRecurringExpenses(@NonNull SQLiteDatabase database)
+    {
+        List<RecurringExpense> recurringExpenses = new ArrayList<>();
+        try ( Cursor cursor = database.query(TABLE_RECURRING_EXPENSE, null, null, null, null, null, null) )
+        {
+            while( cursor.moveToNext() )
+            {
+                recurringExpenses.add(DB.recurringExpenseFromCursor(cursor));
+            }
+        }
+
+        for(RecurringExpense recurringExpense : recurringExpenses)
+        {
+            final long amount = recurringExpense.getAmount().getCents();
+
+            // Rows of this recurring expense by day
+            Map<Long, Long> rowIdByDay = new HashMap<>();
+            Map<Long, Boolean> rowMatchesOccurrenceById = new HashMap<>();
+            try ( Cursor cursor = database.query(TABLE_EXPENSE, new String[]{ COLUMN_EXPENSE_DB_ID, COLUMN_EXPENSE_TITLE, COLUMN_EXPENSE_AMOUNT, COLUMN_EXPENSE_DATE }, COLUMN_EXPENSE_RECURRING_ID + " = " + recurringExpense.getId(), null, null, null, COLUMN_EXPENSE_DATE) )
+            {
+                while( cursor.moveToNext() )
+                {
+                    long day = DailyBalanceTable.getDayKey(cursor.getLong(3));
+                    if( !rowIdByDay.containsKey(day) )
+                    {
+                        rowIdByDay.put(day, cursor.getLong(0));
+                        rowMatchesOccurrenceById.put(cursor.getLong(0), recurringExpense.getTitle().equals(cursor.getString(1)) && amount == cursor.getLong(2));
+                    }
+                }
+            }
+
+            // Occurrences generated by the legacy flattening, that added periods cumulatively
+            final int legacyOccurrencesCount = getLegacyOccurrencesCount(recurringExpense.getType());
+            final long[] rowIdByIndex = new long[legacyOccurrencesCount];
+            final long[] legacyDayByIndex = new long[legacyOccurrencesCount];
+
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(recurringExpense.getRecurringDate());
+
+            int firstIndex = -1;
+            int lastIndex = -1;
+            for(int index = 0; index < legacyOccurrencesCount; index++)
+            {
+                legacyDayByIndex[index] = DailyBalanceTable.getDayKey(cal.getTimeInMillis());
+
+                Long rowId = rowIdByDay.get(legacyDayByIndex[index]);
+                if( rowId != null )
+                {
+                    rowIdByIndex[index] = rowId;
+                    if( firstIndex == -1 )
+                    {
+                        firstIndex = index;
+                    }
+                    lastIndex = index;
+                }
+
+                addLegacyPeriod(cal, recurringExpense.getType());
+            }
+
+            if( firstIndex == -1 )
+            {
+                // No occurrence left: detach the remaining rows and remove the recurring expense
+                ContentValues values = new ContentValues();
+                values.putNull(COLUMN_EXPENSE_RECURRING_ID);
+                database.update(TABLE_EXPENSE, values, COLUMN_EXPENSE_RECURRING_ID + " = " + recurringExpense.getId(), null);
+                database.delete(TABLE_RECURRING_EXPENSE, COLUMN_RECURRING_DB_ID + " = " + recurringExpense.getId(), null);
+                continue;
+            }
+
+            for(int index = firstIndex; index <= lastIndex; index++)
+            {
+                final Date occurrenceDate = RecurrenceEngine.getOccurrenceDate(recurringExpense, index);
+                final long rowId = rowIdByIndex[index];
+
+                if( rowId == 0 )
+                {
+                    // Occurrence deleted by the user
+                    ContentValues values = new ContentValues();
+                    values.put(COLUMN_EXPENSE_TITLE, recurringExpense.getTitle());
+                    values.put(COLUMN_EXPENSE_AMOUNT, 0);
+                    values.put(COLUMN_EXPENSE_DATE, occurrenceDate.getTime());
+                    values.put(COLUMN_EXPENSE_DAY, DateHelper.getEpochDay(occurrenceDate));
+                    values.put(COLUMN_EXPENSE_RECURRING_ID, recurringExpense.getId());
+                    values.put(COLUMN_EXPENSE_OCCURRENCE_DATE, occurrenceDate.getTime());
+                    values.put(COLUMN_EXPENSE_OCCURRENCE_DELETED, 1);
+                    database.insert(TABLE_EXPENSE, null, values);
+                }
+                else
+                {
+                    if( rowMatchesOccurrenceById.get(rowId) && legacyDayByIndex[index] == DailyBalanceTable.getDayKey(occurrenceDate.getTime()) )
+                    {
+                        // Row is exactly the computed occurrence
+                        database.delete(TABLE_EXPENSE, COLUMN_EXPENSE_DB_ID + " = " + rowId, null);
+                    }
+                    else
+                    {
+                        ContentValues values = new ContentValues();
+                        values.put(COLUMN_EXPENSE_OCCURRENCE_DATE, occurrenceDate.getTime());
+                        database.update(TABLE_EXPENSE, values, COLUMN_EXPENSE_DB_ID + " = " + rowId, null);
+                    }
+                }
+            }
+
+            // Rows whose date has been modified cannot be matched to their occurrence anymore
+            ContentValues detachValues = new ContentValues();
+            detachValues.putNull(COLUMN_EXPENSE_RECURRING_ID);
+            database.update(TABLE_EXPENSE, detachValues, COLUMN_EXPENSE_RECURRING_ID + " = " + recurringExpense.getId() + " AND " + COLUMN_EXPENSE_OCCURRENCE_DATE + " IS NULL AND " + COLUMN_EXPENSE_OCCURRENCE_DELETED + " = 0", null);
+
+            // Bounds: occurrences removed before the first row, and after the last one if it's before the legacy horizon
+            ContentValues boundsValues = new ContentValues();
+            if( firstIndex > 0 )
+            {
+                boundsValues.put(COLUMN_RECURRING_START_DATE, RecurrenceEngine.getOccurrenceDate(recurringExpense, firstIndex).getTime());
+            }
+            if( lastIndex < legacyOccurrencesCount - 1 )
+            {
+                boundsValues.put(COLUMN_RECURRING_END_DATE, RecurrenceEngine.getOccurrenceDate(recurringExpense, lastIndex).getTime());
+            }
+            if( boundsValues.size() > 0 )
+            {
+                database.update(TABLE_RECURRING_EXPENSE, boundsValues, COLUMN_RECURRING_DB_ID + " = " + recurringExpense.getId(), null);
+            }
+        }
+    }
+
+    /**
+     * Fill the day column of all existing expenses with the local epoch day of their date, which is
+     * the day their amount is accounted for in the balance table
+     *
+     * @param database
+     */
+    static void backfillExpenseDays(@NonNull SQLiteDatabase database)
+    {
+        try ( Cursor cursor = database.query(TABLE_EXPENSE, new String[]{ COLUMN_EXPENSE_DB_ID, COLUMN_EXPENSE_DATE }, null, null, null, null, null);
+              SQLiteStatement statement = database.compileStatement("UPDATE "+TABLE_EXPENSE+" SET "+COLUMN_EXPENSE_DAY+" = ? WHERE "+COLUMN_EXPENSE_DB_ID+" = ?") )
+        {
+            while( cursor.moveToNext() )
+            {
+                statement.bindLong(1, DateHelper.getEpochDay(cursor.getLong(1)));
+                statement.bindLong(2, cursor.getLong(0));
+                statement.executeUpdateDelete();
+            }
+        }
+    }
+
+    /**
+     * Get the number of occurrences that were flattened into the expense table for the given type
+     *
+     * @param type
+     * @return
+     */
+    private static int getLegacyOccurrencesCount(@NonNull RecurringExpenseType type)
+    {
+        switch (type)
+        {
+            case WEEKLY:
+            case BI_WEEKLY:
+                return 12 * 4 * 5;
+            case MONTHLY:
+                return 12 * 10;
+            case YEARLY:
+                return 100;
+        }
+
+        throw new IllegalArgumentException("Unknown recurring expense type: "+type);
+    }
+
+    /**
+     * Add one period to the given calendar, the way the legacy flattening did
+     *
+     * @param cal
+     * @param type
+     */
+    private static void addLegacyPeriod(@NonNull Calendar cal, @NonNull RecurringExpenseType type)
+    {
+        switch (type)
+        {
+            case WEEKLY:
+                cal.add(Calendar.WEEK_OF_YEAR, 1);
+                break;
+            case BI_WEEKLY:
+                cal.add(Calendar.WEEK_OF_YEAR, 2);
+                break;
+            case MONTHLY:
+                cal.add(Calendar.MONTH, 1);
+                break;
+            case YEARLY:
+                cal.add(Calendar.YEAR, 1);
+                break;
+        }
+    }
+
+    /**
+     * Create the indexes of the expense table: a covering index on (day, amount) for day and month
+     * reads and balance sums, and one on (recurring id, occurrence date) for recurring expense exceptions
+     *
+     * @param database
+     */
+    private static void createExpenseIndexes(@NonNull SQLiteDatabase database)
+    {
+        createExpenseDayIndex(database);
+        database.execSQL("CREATE INDEX IF NOT EXISTS R_O_i on "+ TABLE_EXPENSE +"("+ COLUMN_EXPENSE_RECURRING_ID +", "+ COLUMN_EXPENSE_OCCURRENCE_DATE +");");
+    }
+
+    /**
+     * Create the covering index of the expense table on (day, amount)
+     *
+     * @param database
+     */
+    private static void createExpenseDayIndex(@NonNull SQLiteDatabase database)
+    {
+        database.execSQL("CREATE INDEX IF NOT EXISTS DAY_A_i on "+ TABLE_EXPENSE +"("+ COLUMN_EXPENSE_DAY +", "+ COLUMN_EXPENSE_AMOUNT +");");
+    }
+
+    /**
+     * Create the table containing the cumulated balance per day (see {@link DailyBalanceTable})
+     *
+     * @param database
+     */
+    private static void createBalanceTable(@NonNull SQLiteDatabase database)
+    {
+        database.execSQL("create table "
+            + TABLE_BALANCE + "("
+            + COLUMN_BALANCE_DAY + " integer primary key, "
+            + COLUMN_BALANCE_AMOUNT + " integer not null );");
+    }
 }
\ No newline at end of file
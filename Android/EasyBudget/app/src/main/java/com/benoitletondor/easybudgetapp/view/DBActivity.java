@@ -19,19 +19,25 @@ package com.benoitletondor.easybudgetapp.view;
 import android.os.Bundle;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
 import com.benoitletondor.easybudgetapp.model.db.DB;
 
 /**
- * An {@link AppCompatActivity} that contains an opened DB connection to perform queries
+ * An {@link AppCompatActivity} that contains a DB to perform queries
  *
  * @author Benoit LETONDOR
  */
 public abstract class DBActivity extends AppCompatActivity
 {
     /**
-     * An opened DB connection that is ready to be used
+     * A DB that is ready to be used
      */
     protected DB db;
+    /**
+     * Asynchronous access to the DB, to use for any query made from the main thread. Its callbacks
+     * are dropped once the activity is destroyed
+     */
+    protected AsyncDB asyncDB;
 
 // ------------------------------------------>
 
@@ -41,12 +47,14 @@ public abstract class DBActivity extends AppCompatActivity
         super.onCreate(savedInstanceState);
 
         db = new DB(getApplicationContext());
+        asyncDB = new AsyncDB(getApplicationContext());
     }
 
     @Override
     protected void onDestroy()
     {
-        db.close();
+        // Results of queries still running must not be delivered to a destroyed activity
+        asyncDB.close();
 
         super.onDestroy();
     }
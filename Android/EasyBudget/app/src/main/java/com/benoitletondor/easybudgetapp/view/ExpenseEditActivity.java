@@ -24,6 +24,7 @@ import com.getbase.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.textfield.TextInputLayout;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
 import androidx.appcompat.widget.SwitchCompat;
 import android.view.MenuItem;
@@ -35,6 +36,7 @@ import com.benoitletondor.easybudgetapp.R;
 import com.benoitletondor.easybudgetapp.helper.UIHelper;
 import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
 import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -226,25 +228,41 @@ public class ExpenseEditActivity extends DBActivity
         fab.setOnClickListener(v -> {
             if (validateInputs())
             {
-                double value = Double.parseDouble(amountEditText.getText().toString());
+                Money value = Money.ofAmount(Double.parseDouble(amountEditText.getText().toString()));
 
                 Expense expenseToSave;
                 if (expense == null)
                 {
-                    expenseToSave = new Expense(descriptionEditText.getText().toString(), isRevenue ? -value : value, date);
+                    expenseToSave = new Expense(descriptionEditText.getText().toString(), isRevenue ? value.negate() : value, date);
                 }
                 else
                 {
                     expenseToSave = expense;
                     expenseToSave.setTitle(descriptionEditText.getText().toString());
-                    expenseToSave.setAmount(isRevenue ? -value : value);
+                    expenseToSave.setAmount(isRevenue ? value.negate() : value);
                     expenseToSave.setDate(date);
                 }
 
-                db.persistExpense(expenseToSave);
-
-                setResult(RESULT_OK);
-                finish();
+                // Prevent saving twice while the expense is being persisted
+                fab.setEnabled(false);
+
+                asyncDB.persistExpense(expenseToSave, false, persisted -> {
+                    if( persisted )
+                    {
+                        setResult(RESULT_OK);
+                        finish();
+                        return;
+                    }
+
+                    // Keep the screen open so that the user can try again
+                    fab.setEnabled(true);
+
+                    new AlertDialog.Builder(ExpenseEditActivity.this)
+                        .setTitle(R.string.expense_save_error_title)
+                        .setMessage(R.string.expense_save_error_message)
+                        .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+                        .show();
+                });
             }
         });
     }
@@ -290,7 +308,7 @@ public class ExpenseEditActivity extends DBActivity
 
         if( expense != null )
         {
-            amountEditText.setText(CurrencyHelper.getFormattedAmountValue(Math.abs(expense.getAmount())));
+            amountEditText.setText(CurrencyHelper.getFormattedAmountValue(Math.abs(expense.getAmount().toDouble())));
         }
     }
 
@@ -24,10 +24,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import com.google.android.material.snackbar.Snackbar;
 import androidx.core.app.ActivityCompat;
@@ -59,8 +59,11 @@ import com.benoitletondor.easybudgetapp.helper.ParameterKeys;
 import com.benoitletondor.easybudgetapp.helper.Parameters;
 import com.benoitletondor.easybudgetapp.helper.UserHelper;
 import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
 import com.benoitletondor.easybudgetapp.model.RecurringExpense;
 import com.benoitletondor.easybudgetapp.model.RecurringExpenseDeleteType;
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
+import com.benoitletondor.easybudgetapp.model.db.DB;
 import com.benoitletondor.easybudgetapp.model.db.DBCache;
 import com.benoitletondor.easybudgetapp.view.main.calendar.CalendarFragment;
 import com.benoitletondor.easybudgetapp.view.main.ExpensesRecyclerViewAdapter;
@@ -71,7 +74,6 @@ import com.roomorama.caldroid.CaldroidFragment;
 import com.roomorama.caldroid.CaldroidListener;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -168,32 +170,31 @@ public class MainActivity extends DBActivity
                 {
                     final Expense expense = intent.getParcelableExtra("expense");
 
-                    if( db.deleteExpense(Objects.requireNonNull(expense)) )
-                    {
-                        expensesViewAdapter.removeExpense(expense);
-                        updateBalanceDisplayForDay(expensesViewAdapter.getDate());
-                        calendarFragment.refreshView();
-
-                        Snackbar snackbar = Snackbar.make(coordinatorLayout, expense.isRevenue() ? R.string.income_delete_snackbar_text : R.string.expense_delete_snackbar_text, Snackbar.LENGTH_LONG);
-                        snackbar.setAction(R.string.undo, v -> {
-                            db.persistExpense(expense, true);
-
-                            refreshAllForDate(calendarFragment.getSelectedDate());
-                        });
-                        snackbar.setActionTextColor(ContextCompat.getColor(MainActivity.this, R.color.snackbar_action_undo));
-                        //noinspection ResourceType
-                        snackbar.setDuration(ACTION_SNACKBAR_LENGTH);
-                        snackbar.show();
-                    }
-                    else
-                    {
-                        new AlertDialog.Builder(MainActivity.this)
-                            .setTitle(R.string.expense_delete_error_title)
-                            .setMessage(R.string.expense_delete_error_message)
-                            .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
-                            .show();
-                    }
-
+                    asyncDB.deleteExpense(Objects.requireNonNull(expense), expenseDeleted -> {
+                        if( expenseDeleted )
+                        {
+                            expensesViewAdapter.removeExpense(expense);
+                            updateBalanceDisplayForDay(expensesViewAdapter.getDate());
+                            calendarFragment.refreshView();
+
+                            Snackbar snackbar = Snackbar.make(coordinatorLayout, expense.isRevenue() ? R.string.income_delete_snackbar_text : R.string.expense_delete_snackbar_text, Snackbar.LENGTH_LONG);
+                            snackbar.setAction(R.string.undo, v -> {
+                                asyncDB.persistExpense(expense, true, persisted -> refreshAllForDate(calendarFragment.getSelectedDate()));
+                            });
+                            snackbar.setActionTextColor(ContextCompat.getColor(MainActivity.this, R.color.snackbar_action_undo));
+                            //noinspection ResourceType
+                            snackbar.setDuration(ACTION_SNACKBAR_LENGTH);
+                            snackbar.show();
+                        }
+                        else
+                        {
+                            new AlertDialog.Builder(MainActivity.this)
+                                .setTitle(R.string.expense_delete_error_title)
+                                .setMessage(R.string.expense_delete_error_message)
+                                .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+                                .show();
+                        }
+                    });
                 }
                 else if( INTENT_RECURRING_EXPENSE_DELETED.equals(intent.getAction()) )
                 {
@@ -217,18 +218,27 @@ public class MainActivity extends DBActivity
                     }
 
                     // Check that if the user wants to delete series before this one, there are actually series to delete
-                    if( deleteType == RecurringExpenseDeleteType.TO && !db.hasExpensesForRecurringExpenseBeforeDate(expense.getAssociatedRecurringExpense(), expense.getDate()) )
+                    if( deleteType == RecurringExpenseDeleteType.TO )
                     {
-                        new AlertDialog.Builder(MainActivity.this)
-                            .setTitle(R.string.recurring_expense_delete_first_error_title)
-                            .setMessage(getResources().getString(R.string.recurring_expense_delete_first_error_message))
-                            .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
-                            .show();
+                        asyncDB.hasExpensesForRecurringExpenseBeforeDate(expense.getAssociatedRecurringExpense(), Objects.requireNonNull(expense.getOccurrenceDate()), hasExpensesBefore -> {
+                            if( !hasExpensesBefore )
+                            {
+                                new AlertDialog.Builder(MainActivity.this)
+                                    .setTitle(R.string.recurring_expense_delete_first_error_title)
+                                    .setMessage(getResources().getString(R.string.recurring_expense_delete_first_error_message))
+                                    .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+                                    .show();
+
+                                return;
+                            }
+
+                            deleteRecurringExpense(expense.getAssociatedRecurringExpense(), expense, deleteType);
+                        });
 
                         return;
                     }
 
-                    new DeleteRecurringExpenseTask(expense.getAssociatedRecurringExpense(), expense, deleteType).execute();
+                    deleteRecurringExpense(expense.getAssociatedRecurringExpense(), expense, deleteType);
                 }
                 else if( SelectCurrencyFragment.CURRENCY_SELECTED_INTENT.equals(intent.getAction()) )
                 {
@@ -416,127 +426,166 @@ public class MainActivity extends DBActivity
         }
         else if( id == R.id.action_balance )
         {
-            final double currentBalance = -db.getBalanceForDay(new Date());
-
-            View dialogView = getLayoutInflater().inflate(R.layout.dialog_adjust_balance, null);
-            final EditText amountEditText = dialogView.findViewById(R.id.balance_amount);
-            amountEditText.setText(currentBalance == 0 ? "0" : CurrencyHelper.getFormattedAmountValue(currentBalance));
-            UIHelper.preventUnsupportedInputForDecimals(amountEditText);
-            amountEditText.setSelection(amountEditText.getText().length()); // Put focus at the end of the text
-
-            AlertDialog.Builder builder = new AlertDialog.Builder(this);
-            builder.setTitle(R.string.adjust_balance_title);
-            builder.setMessage(R.string.adjust_balance_message);
-            builder.setView(dialogView);
-            builder.setNegativeButton(R.string.cancel, (dialog, which) -> dialog.dismiss());
-            builder.setPositiveButton(R.string.ok, (dialog, which) -> {
-                try
+            asyncDB.getBalanceForDay(new Date(), balance -> {
+                if( balance != null )
                 {
-                    // Ajust balance
-                    double newBalance = Double.valueOf(amountEditText.getText().toString());
-
-                    if( newBalance == currentBalance )
-                    {
-                        // Nothing to do, balance hasn't change
-                        return;
-                    }
+                    showAdjustBalanceDialog(balance.negate());
+                }
+                else
+                {
+                    showAdjustBalanceErrorDialog();
+                }
+            });
 
-                    final double diff = newBalance - currentBalance;
+            return true;
+        }
+        else if( id == R.id.action_monthly_report )
+        {
+            Intent startIntent = new Intent(this, MonthlyReportActivity.class);
+            ActivityCompat.startActivity(MainActivity.this, startIntent, null);
 
-                    String balanceExpenseTitle = getResources().getString(R.string.adjust_balance_expense_title);
+            return true;
+        }
 
-                    // Look for an existing balance for the day
-                    Expense expense = null;
-                    List<Expense> expensesForDay = db.getExpensesForDay(new Date());
-                    for(Expense expenseOfDay : expensesForDay)
-                    {
-                        if( expenseOfDay.getTitle().equals(balanceExpenseTitle) )
-                        {
-                            expense = expenseOfDay;
-                            break;
-                        }
-                    }
+        return super.onOptionsItemSelected(item);
+    }
 
-                    View.OnClickListener listener;
+// ------------------------------------------>
 
-                    // If the adjust balance exists, just add the diff and persist it
-                    if( expense != null )
-                    {
-                        final Expense persistedExpense = expense;
+    /**
+     * Show the dialog to adjust the balance of today
+     *
+     * @param currentBalance the current balance of today
+     */
+    private void showAdjustBalanceDialog(@NonNull final Money currentBalance)
+    {
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_adjust_balance, null);
+        final EditText amountEditText = dialogView.findViewById(R.id.balance_amount);
+        amountEditText.setText(currentBalance.isZero() ? "0" : CurrencyHelper.getFormattedAmountValue(currentBalance.toDouble()));
+        UIHelper.preventUnsupportedInputForDecimals(amountEditText);
+        amountEditText.setSelection(amountEditText.getText().length()); // Put focus at the end of the text
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.adjust_balance_title);
+        builder.setMessage(R.string.adjust_balance_message);
+        builder.setView(dialogView);
+        builder.setNegativeButton(R.string.cancel, (dialog, which) -> dialog.dismiss());
+        builder.setPositiveButton(R.string.ok, (dialog, which) -> {
+            try
+            {
+                // Ajust balance
+                Money newBalance = Money.ofAmount(Double.valueOf(amountEditText.getText().toString()));
 
-                        persistedExpense.setAmount(persistedExpense.getAmount() - diff);
-                        db.persistExpense(persistedExpense);
+                if( newBalance.equals(currentBalance) )
+                {
+                    // Nothing to do, balance hasn't change
+                    return;
+                }
 
-                        // On cancel, remove the diff and persist
-                        listener = v -> {
-                            persistedExpense.setAmount(persistedExpense.getAmount() + diff);
-                            db.persistExpense(persistedExpense);
+                final Money diff = newBalance.minus(currentBalance);
 
-                            refreshAllForDate(expensesViewAdapter.getDate());
-                        };
-                    }
-                    else // If no adjust balance yet, create a new one
-                    {
-                        final Expense persistedExpense = new Expense(getResources().getString(R.string.adjust_balance_expense_title), -diff, new Date());
-                        db.persistExpense(persistedExpense);
+                final String balanceExpenseTitle = getResources().getString(R.string.adjust_balance_expense_title);
 
-                        // On cancel, just delete the inserted balance
-                        listener = v -> {
-                            db.deleteExpense(persistedExpense);
+                asyncDB.execute(database -> adjustBalance(database, balanceExpenseTitle, diff), undoOperation -> {
+                    refreshAllForDate(expensesViewAdapter.getDate());
 
-                            refreshAllForDate(expensesViewAdapter.getDate());
-                        };
+                    if( undoOperation == null )
+                    {
+                        showAdjustBalanceErrorDialog();
+                        return;
                     }
 
-                    refreshAllForDate(expensesViewAdapter.getDate());
-                    dialog.dismiss();
-
                     //Show snackbar
-                    Snackbar snackbar = Snackbar.make(coordinatorLayout, getResources().getString(R.string.adjust_balance_snackbar_text, CurrencyHelper.getFormattedCurrencyString(MainActivity.this, newBalance)), Snackbar.LENGTH_LONG);
-                    snackbar.setAction(R.string.undo, listener);
+                    Snackbar snackbar = Snackbar.make(coordinatorLayout, getResources().getString(R.string.adjust_balance_snackbar_text, CurrencyHelper.getFormattedCurrencyString(MainActivity.this, newBalance.toDouble())), Snackbar.LENGTH_LONG);
+                    snackbar.setAction(R.string.undo, v -> asyncDB.execute(undoOperation, false, undone -> refreshAllForDate(expensesViewAdapter.getDate())));
                     snackbar.setActionTextColor(ContextCompat.getColor(MainActivity.this, R.color.snackbar_action_undo));
                     //noinspection ResourceType
                     snackbar.setDuration(ACTION_SNACKBAR_LENGTH);
                     snackbar.show();
-                }
-                catch (Exception e)
-                {
-                    new AlertDialog.Builder(MainActivity.this)
-                        .setTitle(R.string.adjust_balance_error_title)
-                        .setMessage(R.string.adjust_balance_error_message)
-                        .setNegativeButton(R.string.ok, (dialog1, which1) -> dialog1.dismiss())
-                        .show();
-
-                    Logger.warning("An error occurred during balance", e);
-                    dialog.dismiss();
-                }
-            });
+                });
 
-            final Dialog dialog = builder.show();
+                dialog.dismiss();
+            }
+            catch (Exception e)
+            {
+                showAdjustBalanceErrorDialog();
 
-            // Directly show keyboard when the dialog pops
-            amountEditText.setOnFocusChangeListener((v, hasFocus) -> {
-                if (hasFocus && getResources().getConfiguration().keyboard == Configuration.KEYBOARD_NOKEYS ) // Check if the device doesn't have a physical keyboard
-                {
-                    Objects.requireNonNull(dialog.getWindow()).setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_ALWAYS_VISIBLE);
-                }
-            });
+                Logger.warning("An error occurred during balance", e);
+                dialog.dismiss();
+            }
+        });
 
-            return true;
+        final Dialog dialog = builder.show();
+
+        // Directly show keyboard when the dialog pops
+        amountEditText.setOnFocusChangeListener((v, hasFocus) -> {
+            if (hasFocus && getResources().getConfiguration().keyboard == Configuration.KEYBOARD_NOKEYS ) // Check if the device doesn't have a physical keyboard
+            {
+                Objects.requireNonNull(dialog.getWindow()).setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_ALWAYS_VISIBLE);
+            }
+        });
+    }
+
+    /**
+     * Show a generic alert dialog telling the user an error occured while adjusting the balance
+     */
+    private void showAdjustBalanceErrorDialog()
+    {
+        new AlertDialog.Builder(MainActivity.this)
+            .setTitle(R.string.adjust_balance_error_title)
+            .setMessage(R.string.adjust_balance_error_message)
+            .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+            .show();
+    }
+
+    /**
+     * Adjust the balance of today by the given diff, using the adjust balance expense of the day if any
+     *
+     * @param db database link
+     * @param balanceExpenseTitle title of the adjust balance expense
+     * @param diff amount to add to the balance
+     * @return the operation that reverts the adjustment
+     */
+    @WorkerThread
+    @NonNull
+    private static AsyncDB.Operation<Boolean> adjustBalance(@NonNull DB db, @NonNull String balanceExpenseTitle, @NonNull Money diff)
+    {
+        // Look for an existing balance for the day
+        Expense expense = null;
+        List<Expense> expensesForDay = db.getExpensesForDay(new Date());
+        for(Expense expenseOfDay : expensesForDay)
+        {
+            if( expenseOfDay.getTitle().equals(balanceExpenseTitle) )
+            {
+                expense = expenseOfDay;
+                break;
+            }
         }
-        else if( id == R.id.action_monthly_report )
+
+        // If the adjust balance exists, just add the diff and persist it
+        if( expense != null )
         {
-            Intent startIntent = new Intent(this, MonthlyReportActivity.class);
-            ActivityCompat.startActivity(MainActivity.this, startIntent, null);
+            final Expense persistedExpense = expense;
 
-            return true;
+            persistedExpense.setAmount(persistedExpense.getAmount().minus(diff));
+            db.persistExpense(persistedExpense);
+
+            // On cancel, remove the diff and persist
+            return database -> {
+                persistedExpense.setAmount(persistedExpense.getAmount().plus(diff));
+                return database.persistExpense(persistedExpense);
+            };
         }
+        else // If no adjust balance yet, create a new one
+        {
+            final Expense persistedExpense = new Expense(balanceExpenseTitle, diff.negate(), new Date());
+            db.persistExpense(persistedExpense);
 
-        return super.onOptionsItemSelected(item);
+            // On cancel, just delete the inserted balance
+            return database -> database.deleteExpense(persistedExpense);
+        }
     }
 
-// ------------------------------------------>
-
     /**
      * Update the balance for the given day
      * TODO optim
@@ -545,8 +594,23 @@ public class MainActivity extends DBActivity
      */
     private void updateBalanceDisplayForDay(@NonNull Date day)
     {
-        double balance = 0; // Just to keep a positive number if balance == 0
-        balance -= db.getBalanceForDay(day);
+        asyncDB.getBalanceForDay(day, dayBalance -> {
+            if( dayBalance != null )
+            {
+                displayBalanceForDay(day, dayBalance);
+            }
+        });
+    }
+
+    /**
+     * Display the given balance for the given day
+     *
+     * @param day
+     * @param dayBalance balance of the day as stored in DB
+     */
+    private void displayBalanceForDay(@NonNull Date day, @NonNull Money dayBalance)
+    {
+        final double balance = dayBalance.negate().toDouble();
 
         SimpleDateFormat format = new SimpleDateFormat(getResources().getString(R.string.account_balance_date_format), Locale.getDefault());
 
@@ -730,11 +794,12 @@ public class MainActivity extends DBActivity
             @Override
             public void onChangeMonth(int month, int year)
             {
+                // Caldroid months go from 1 to 12
                 Calendar cal = Calendar.getInstance();
-                cal.set(Calendar.MONTH, month);
-                cal.set(Calendar.YEAR, year);
+                cal.clear();
+                cal.set(year, month - 1, 1);
 
-                DBCache.getInstance(MainActivity.this).loadMonth(cal.getTime());
+                DBCache.getInstance(MainActivity.this).onMonthDisplayed(cal.getTime());
             }
 
             @Override
@@ -919,7 +984,7 @@ public class MainActivity extends DBActivity
             }
         }
 
-        expensesViewAdapter = new ExpensesRecyclerViewAdapter(this, db, date);
+        expensesViewAdapter = new ExpensesRecyclerViewAdapter(this, date);
         recyclerView.setAdapter(expensesViewAdapter);
 
         refreshRecyclerViewForDate(date);
@@ -928,18 +993,25 @@ public class MainActivity extends DBActivity
 
     private void refreshRecyclerViewForDate(@NonNull Date date)
     {
-        expensesViewAdapter.setDate(date, db);
+        asyncDB.getExpensesForDay(date, expenses -> {
+            if( expenses == null )
+            {
+                return;
+            }
 
-        if( db.hasExpensesForDay(date) )
-        {
-            recyclerView.setVisibility(View.VISIBLE);
-            recyclerViewPlaceholder.setVisibility(View.GONE);
-        }
-        else
-        {
-            recyclerView.setVisibility(View.GONE);
-            recyclerViewPlaceholder.setVisibility(View.VISIBLE);
-        }
+            expensesViewAdapter.setDate(date, expenses);
+
+            if( !expenses.isEmpty() )
+            {
+                recyclerView.setVisibility(View.VISIBLE);
+                recyclerViewPlaceholder.setVisibility(View.GONE);
+            }
+            else
+            {
+                recyclerView.setVisibility(View.GONE);
+                recyclerViewPlaceholder.setVisibility(View.VISIBLE);
+            }
+        });
     }
 
     private void refreshAllForDate(@NonNull Date date)
@@ -965,137 +1037,28 @@ public class MainActivity extends DBActivity
 // ---------------------------------------->
 
     /**
-     * An asynctask to delete a recurring expense from DB
+     * Delete a recurring expense from DB, showing a loading dialog during the delete
+     *
+     * @param recurringExpense the recurring expense associated with the expense deleted by the user
+     * @param expense the expense deleted by the user
+     * @param deleteType type of delete
      */
-    private class DeleteRecurringExpenseTask extends AsyncTask<Void, Integer, Boolean>
+    private void deleteRecurringExpense(@NonNull final RecurringExpense recurringExpense, @NonNull final Expense expense, @NonNull final RecurringExpenseDeleteType deleteType)
     {
-        /**
-         * Dialog used to display loading to the user
-         */
-        private ProgressDialog dialog;
-
-        /**
-         * The expense deleted by the user
-         */
-        private final Expense                  expense;
-        /**
-         * The recurring expense associated with the expense deleted by the user
-         */
-        private final RecurringExpense recurringExpense;
-        /**
-         * Type of delete
-         */
-        private final RecurringExpenseDeleteType deleteType;
-
-        /**
-         * Expenses to restore if delete is successful and user cancels it
-         */
-        @Nullable
-        private List<Expense> expensesToRestore;
-        /**
-         * Recurring expense to restore if delete is successful and user cancels it
-         */
-        @Nullable
-        private RecurringExpense recurringExpenseToRestore;
-
-        // ------------------------------------------->
-
-        DeleteRecurringExpenseTask(@NonNull RecurringExpense recurringExpense, @NonNull Expense expense, @NonNull RecurringExpenseDeleteType deleteType)
-        {
-            this.recurringExpense = recurringExpense;
-            this.expense = expense;
-            this.deleteType = deleteType;
-        }
-
-        // ------------------------------------------->
-
-        @Override
-        protected Boolean doInBackground(Void... nothing)
-        {
-            switch (deleteType)
-            {
-                case ALL:
-                {
-                    recurringExpenseToRestore = recurringExpense;
-                    expensesToRestore = db.getAllExpenseForRecurringExpense(recurringExpense);
-
-                    boolean expensesDeleted = db.deleteAllExpenseForRecurringExpense(recurringExpense);
-                    if( !expensesDeleted )
-                    {
-                        Logger.error(false, "Error while deleting expenses for recurring expense (mode ALL). deleteAllExpenseForRecurringExpense returned false");
-                        return false;
-                    }
-
-                    boolean recurringExpenseDeleted = db.deleteRecurringExpense(recurringExpense);
-                    if( !recurringExpenseDeleted )
-                    {
-                        Logger.error(false, "Error while deleting recurring expense (mode ALL). deleteRecurringExpense returned false");
-                        return false;
-                    }
-
-                    break;
-                }
-                case FROM:
-                {
-                    expensesToRestore = db.getAllExpensesForRecurringExpenseFromDate(recurringExpense, expense.getDate());
-
-                    boolean expensesDeleted = db.deleteAllExpenseForRecurringExpenseFromDate(recurringExpense, expense.getDate());
-                    if( !expensesDeleted )
-                    {
-                        Logger.error(false, "Error while deleting expenses for recurring expense (mode FROM). deleteAllExpenseForRecurringExpenseFromDate returned false");
-                        return false;
-                    }
-
-                    break;
-                }
-                case TO:
-                {
-                    expensesToRestore = db.getAllExpensesForRecurringExpenseBeforeDate(recurringExpense, expense.getDate());
-
-                    boolean expensesDeleted = db.deleteAllExpenseForRecurringExpenseBeforeDate(recurringExpense, expense.getDate());
-                    if( !expensesDeleted )
-                    {
-                        Logger.error(false, "Error while deleting expenses for recurring expense (mode TO). deleteAllExpenseForRecurringExpenseBeforeDate returned false");
-                        return false;
-                    }
-
-                    break;
-                }
-                case ONE:
-                {
-                    expensesToRestore = new ArrayList<>(1);
-                    expensesToRestore.add(expense);
-
-                    boolean expenseDeleted = db.deleteExpense(expense);
-                    if( !expenseDeleted )
-                    {
-                        Logger.error("Error while deleting expense for recurring expense (mode ONE). deleteExpense returned false");
-                        return false;
-                    }
-
-                    break;
-                }
-            }
-
-            return true;
-        }
-
-        @Override
-        protected void onPreExecute()
-        {
-            // Show a ProgressDialog
-            dialog = new ProgressDialog(MainActivity.this);
-            dialog.setIndeterminate(true);
-            dialog.setTitle(R.string.recurring_expense_delete_loading_title);
-            dialog.setMessage(getResources().getString(R.string.recurring_expense_delete_loading_message));
-            dialog.setCanceledOnTouchOutside(false);
-            dialog.setCancelable(false);
-            dialog.show();
-        }
-
-        @Override
-        protected void onPostExecute(Boolean result)
-        {
+        // Keep the bounds of the recurring expense to restore them if user cancels the delete
+        final Date previousStartDate = recurringExpense.getStartDate();
+        final Date previousEndDate = recurringExpense.getEndDate();
+
+        // Show a ProgressDialog
+        final ProgressDialog dialog = new ProgressDialog(MainActivity.this);
+        dialog.setIndeterminate(true);
+        dialog.setTitle(R.string.recurring_expense_delete_loading_title);
+        dialog.setMessage(getResources().getString(R.string.recurring_expense_delete_loading_message));
+        dialog.setCanceledOnTouchOutside(false);
+        dialog.setCancelable(false);
+        dialog.show();
+
+        asyncDB.execute(database -> deleteRecurringExpense(database, recurringExpense, expense, deleteType), false, result -> {
             // Dismiss the dialog
             dialog.dismiss();
 
@@ -1104,14 +1067,25 @@ public class MainActivity extends DBActivity
                 // Refresh and show confirm snackbar
                 refreshAllForDate(expensesViewAdapter.getDate());
                 Snackbar snackbar = Snackbar.make(coordinatorLayout, R.string.recurring_expense_delete_success_message, Snackbar.LENGTH_LONG);
+                snackbar.setAction(R.string.undo, v -> cancelDeleteRecurringExpense(recurringExpense, expense, deleteType, previousStartDate, previousEndDate));
+                snackbar.setActionTextColor(ContextCompat.getColor(MainActivity.this, R.color.snackbar_action_undo));
 
-                if( expensesToRestore != null ) // just in case..
+                if( deleteType == RecurringExpenseDeleteType.ALL )
                 {
-                    snackbar.setAction(R.string.undo, v -> new CancelDeleteRecurringExpenseTask(expensesToRestore, recurringExpenseToRestore).execute());
+                    // Once the delete can't be cancelled anymore, remove the deleted recurring expense from DB
+                    snackbar.addCallback(new Snackbar.Callback()
+                    {
+                        @Override
+                        public void onDismissed(Snackbar transientBottomBar, int event)
+                        {
+                            if( event != DISMISS_EVENT_ACTION )
+                            {
+                                asyncDB.purgeDeletedRecurringExpense(recurringExpense);
+                            }
+                        }
+                    });
                 }
 
-                snackbar.setActionTextColor(ContextCompat.getColor(MainActivity.this, R.color.snackbar_action_undo));
-
                 //noinspection ResourceType
                 snackbar.setDuration(ACTION_SNACKBAR_LENGTH);
                 snackbar.show();
@@ -1120,100 +1094,144 @@ public class MainActivity extends DBActivity
             {
                 showGenericRecurringDeleteErrorDialog();
             }
-        }
-
-
+        });
     }
 
     /**
-     * An asynctask to restore deleted recurring expense from DB
+     * Restore a deleted recurring expense, showing a loading dialog during the restore
+     *
+     * @param recurringExpense the recurring expense to restore
+     * @param expense the deleted expense
+     * @param deleteType the type of the delete to cancel
+     * @param startDateToRestore the start date of the recurring expense before the delete
+     * @param endDateToRestore the end date of the recurring expense before the delete
      */
-    private class CancelDeleteRecurringExpenseTask extends AsyncTask<Void, Void, Boolean>
+    private void cancelDeleteRecurringExpense(@NonNull final RecurringExpense recurringExpense, @NonNull final Expense expense, @NonNull final RecurringExpenseDeleteType deleteType, @Nullable final Date startDateToRestore, @Nullable final Date endDateToRestore)
     {
-        /**
-         * Dialog used to display loading to the user
-         */
-        private ProgressDialog dialog;
-
-        /**
-         * List of expenses to restore
-         */
-        private final List<Expense> expensesToRestore;
-        /**
-         * Recurring expense to restore (will be null if delete type != ALL)
-         */
-        private final RecurringExpense recurringExpenseToRestore;
+        // Show a ProgressDialog
+        final ProgressDialog dialog = new ProgressDialog(MainActivity.this);
+        dialog.setIndeterminate(true);
+        dialog.setTitle(R.string.recurring_expense_restoring_loading_title);
+        dialog.setMessage(getResources().getString(R.string.recurring_expense_restoring_loading_message));
+        dialog.setCanceledOnTouchOutside(false);
+        dialog.setCancelable(false);
+        dialog.show();
+
+        asyncDB.execute(database -> cancelDeleteRecurringExpense(database, recurringExpense, expense, deleteType, startDateToRestore, endDateToRestore), false, result -> {
+            // Dismiss the dialog
+            dialog.dismiss();
 
-        // ------------------------------------------->
+            if (result)
+            {
+                // Refresh and show confirm snackbar
+                refreshAllForDate(expensesViewAdapter.getDate());
+                Snackbar.make(coordinatorLayout, R.string.recurring_expense_restored_success_message, Snackbar.LENGTH_LONG).show();
+            }
+            else
+            {
+                new AlertDialog.Builder(MainActivity.this)
+                    .setTitle(R.string.recurring_expense_restore_error_title)
+                    .setMessage(getResources().getString(R.string.recurring_expense_restore_error_message))
+                    .setNegativeButton(R.string.ok, (errorDialog, which) -> errorDialog.dismiss())
+                    .show();
+            }
+        });
+    }
 
-        /**
-         *
-         * @param expensesToRestore The deleted expenses to restore
-         * @param recurringExpenseToRestore the deleted recurring expense to restore
-         */
-        private CancelDeleteRecurringExpenseTask(@NonNull List<Expense> expensesToRestore, @Nullable RecurringExpense recurringExpenseToRestore)
+    /**
+     * Perform the delete of a recurring expense in DB
+     *
+     * @param db database link
+     * @param recurringExpense the recurring expense associated with the expense deleted by the user
+     * @param expense the expense deleted by the user
+     * @param deleteType type of delete
+     * @return true on success, false on error
+     */
+    @WorkerThread
+    private static boolean deleteRecurringExpense(@NonNull DB db, @NonNull RecurringExpense recurringExpense, @NonNull Expense expense, @NonNull RecurringExpenseDeleteType deleteType)
+    {
+        switch (deleteType)
         {
-            this.expensesToRestore = expensesToRestore;
-            this.recurringExpenseToRestore = recurringExpenseToRestore;
-        }
+            case ALL:
+            {
+                boolean recurringExpenseDeleted = db.deleteRecurringExpense(recurringExpense);
+                if( !recurringExpenseDeleted )
+                {
+                    Logger.error(false, "Error while deleting recurring expense (mode ALL). deleteRecurringExpense returned false");
+                    return false;
+                }
 
-        // ------------------------------------------->
+                break;
+            }
+            case FROM:
+            {
+                // Remove occurrences after this one
+                final RecurringExpense updatedRecurringExpense = recurringExpense.withBounds(recurringExpense.getStartDate(), Objects.requireNonNull(expense.getOccurrenceDate()));
 
-        @Override
-        protected void onPreExecute()
-        {
-            // Show a ProgressDialog
-            dialog = new ProgressDialog(MainActivity.this);
-            dialog.setIndeterminate(true);
-            dialog.setTitle(R.string.recurring_expense_restoring_loading_title);
-            dialog.setMessage(getResources().getString(R.string.recurring_expense_restoring_loading_message));
-            dialog.setCanceledOnTouchOutside(false);
-            dialog.setCancelable(false);
-            dialog.show();
-        }
+                boolean recurringExpenseUpdated = db.updateRecurringExpense(updatedRecurringExpense);
+                if( !recurringExpenseUpdated )
+                {
+                    Logger.error(false, "Error while deleting expenses for recurring expense (mode FROM). updateRecurringExpense returned false");
+                    return false;
+                }
 
-        @Override
-        protected Boolean doInBackground(Void... params)
-        {
-            if( recurringExpenseToRestore != null )
+                break;
+            }
+            case TO:
             {
-                if( !db.addRecurringExpense(recurringExpenseToRestore) )
+                // Remove occurrences before this one
+                final RecurringExpense updatedRecurringExpense = recurringExpense.withBounds(Objects.requireNonNull(expense.getOccurrenceDate()), recurringExpense.getEndDate());
+
+                boolean recurringExpenseUpdated = db.updateRecurringExpense(updatedRecurringExpense);
+                if( !recurringExpenseUpdated )
                 {
+                    Logger.error(false, "Error while deleting expenses for recurring expense (mode TO). updateRecurringExpense returned false");
                     return false;
                 }
-            }
 
-            for(Expense expense: expensesToRestore)
+                break;
+            }
+            case ONE:
             {
-                if( !db.persistExpense(expense, true) )
+                boolean expenseDeleted = db.deleteExpense(expense);
+                if( !expenseDeleted )
                 {
+                    Logger.error("Error while deleting expense for recurring expense (mode ONE). deleteExpense returned false");
                     return false;
                 }
-            }
 
-            return true;
+                break;
+            }
         }
 
-        @Override
-        protected void onPostExecute(Boolean result)
-        {
-            // Dismiss the dialog
-            dialog.dismiss();
+        return true;
+    }
 
-            if (result)
-            {
-                // Refresh and show confirm snackbar
-                refreshAllForDate(expensesViewAdapter.getDate());
-                Snackbar.make(coordinatorLayout, R.string.recurring_expense_restored_success_message, Snackbar.LENGTH_LONG).show();
-            }
-            else
-            {
-                new AlertDialog.Builder(MainActivity.this)
-                    .setTitle(R.string.recurring_expense_restore_error_title)
-                    .setMessage(getResources().getString(R.string.recurring_expense_restore_error_message))
-                    .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
-                    .show();
-            }
+    /**
+     * Perform the restore of a deleted recurring expense in DB
+     *
+     * @param db database link
+     * @param recurringExpense the recurring expense to restore
+     * @param expense the deleted expense
+     * @param deleteType the type of the delete to cancel
+     * @param startDateToRestore the start date of the recurring expense before the delete
+     * @param endDateToRestore the end date of the recurring expense before the delete
+     * @return true on success, false on error
+     */
+    @WorkerThread
+    private static boolean cancelDeleteRecurringExpense(@NonNull DB db, @NonNull RecurringExpense recurringExpense, @NonNull Expense expense, @NonNull RecurringExpenseDeleteType deleteType, @Nullable Date startDateToRestore, @Nullable Date endDateToRestore)
+    {
+        switch (deleteType)
+        {
+            case ALL:
+                return db.restoreRecurringExpense(recurringExpense);
+            case FROM:
+            case TO:
+                return db.updateRecurringExpense(recurringExpense.withBounds(startDateToRestore, endDateToRestore));
+            case ONE:
+                return db.persistExpense(expense, true);
         }
+
+        return false;
     }
-}
\ No newline at end of file
+}
@@ -47,6 +47,7 @@ import com.benoitletondor.easybudgetapp.helper.ParameterKeys;
 import com.benoitletondor.easybudgetapp.helper.Parameters;
 import com.benoitletondor.easybudgetapp.helper.UIHelper;
 import com.benoitletondor.easybudgetapp.helper.UserHelper;
+import com.benoitletondor.easybudgetapp.model.db.DBMetrics;
 import com.benoitletondor.easybudgetapp.notif.DailyNotifOptinService;
 import com.benoitletondor.easybudgetapp.notif.MonthlyReportNotifService;
 import com.benoitletondor.easybudgetapp.view.selectcurrency.SelectCurrencyFragment;
@@ -320,6 +321,27 @@ public class PreferencesFragment extends PreferenceFragment
                 return true;
             });
             animationsPref.setChecked(UIHelper.areAnimationsEnabled(getActivity()));
+
+            /*
+             * Show cache metrics
+             */
+            findPreference(getResources().getString(R.string.setting_category_dev_cache_metrics_key)).setOnPreferenceClickListener(preference -> {
+                new AlertDialog.Builder(getActivity())
+                    .setTitle(R.string.setting_category_dev_cache_metrics_title)
+                    .setMessage(DBMetrics.getReport())
+                    .setPositiveButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+                    .show();
+                return false;
+            });
+
+            /*
+             * Reset cache metrics
+             */
+            findPreference(getResources().getString(R.string.setting_category_dev_reset_cache_metrics_key)).setOnPreferenceClickListener(preference -> {
+                DBMetrics.reset();
+                Toast.makeText(getActivity(), R.string.setting_category_dev_cache_metrics_reset, Toast.LENGTH_SHORT).show();
+                return false;
+            });
         }
 
         /*
@@ -19,7 +19,6 @@ package com.benoitletondor.easybudgetapp.view;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.app.ProgressDialog;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.MenuItem;
 import android.widget.ArrayAdapter;
@@ -32,7 +31,7 @@ import com.benoitletondor.easybudgetapp.R;
 import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
 import com.benoitletondor.easybudgetapp.helper.Logger;
 import com.benoitletondor.easybudgetapp.helper.UIHelper;
-import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
 import com.benoitletondor.easybudgetapp.model.RecurringExpense;
 import com.benoitletondor.easybudgetapp.model.RecurringExpenseType;
 import com.getbase.floatingactionbutton.FloatingActionButton;
@@ -227,11 +226,12 @@ public class RecurringExpenseEditActivity extends DBActivity
         fab.setOnClickListener(v -> {
             if( validateInputs() )
             {
-                double value = Double.parseDouble(amountEditText.getText().toString());
+                Money value = Money.ofAmount(Double.parseDouble(amountEditText.getText().toString()));
 
-                RecurringExpense expense = new RecurringExpense(descriptionEditText.getText().toString(), isRevenue? -value : value, dateStart, getRecurringTypeFromSpinnerSelection(recurringTypeSpinner.getSelectedItemPosition()));
+                RecurringExpense expense = new RecurringExpense(descriptionEditText.getText().toString(), isRevenue? value.negate() : value, dateStart, getRecurringTypeFromSpinnerSelection(recurringTypeSpinner.getSelectedItemPosition()));
+                expense.setEndDate(dateEnd);
 
-                new SaveRecurringExpenseTask().execute(expense);
+                saveRecurringExpense(expense);
             }
         });
     }
@@ -277,7 +277,7 @@ public class RecurringExpenseEditActivity extends DBActivity
 
         if( expense != null )
         {
-            amountEditText.setText(CurrencyHelper.getFormattedAmountValue(Math.abs(expense.getAmount())));
+            amountEditText.setText(CurrencyHelper.getFormattedAmountValue(Math.abs(expense.getAmount().toDouble())));
         }
 
         recurringTypeSpinner = findViewById(R.id.expense_type_spinner);
@@ -360,157 +360,40 @@ public class RecurringExpenseEditActivity extends DBActivity
 // ------------------------------------------->
 
     /**
-     * An asynctask to save recurring expense to DB
+     * Save the recurring expense to DB, showing a loading dialog during the save
+     *
+     * @param expense the recurring expense to save
      */
-    private class SaveRecurringExpenseTask extends AsyncTask<RecurringExpense, Integer, Boolean>
+    private void saveRecurringExpense(@NonNull final RecurringExpense expense)
     {
-        /**
-         * Dialog used to display loading to the user
-         */
-        private ProgressDialog dialog;
-
-        @Override
-        protected Boolean doInBackground(RecurringExpense... expenses)
-        {
-            for (RecurringExpense expense : expenses)
-            {
-                boolean inserted = db.addRecurringExpense(expense);
-                if( !inserted )
-                {
-                    Logger.error(false, "Error while inserting recurring expense into DB: addRecurringExpense returned false");
-                    return false;
-                }
-
-                if( !flattenExpensesForRecurringExpense(expense) )
-                {
-                    Logger.error(false, "Error while flattening expenses for recurring expense: flattenExpensesForRecurringExpense returned false");
-                    return false;
-                }
-            }
-
-            return true;
-        }
-
-        private boolean flattenExpensesForRecurringExpense(@NonNull RecurringExpense expense)
-        {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(dateStart);
-
-            switch (expense.getType())
-            {
-                case WEEKLY:
-                    // Add up to 5 years of expenses
-                    for (int i = 0; i < 12*4*5; i++)
-                    {
-                        boolean expenseInserted = db.persistExpense(new Expense(expense.getTitle(), expense.getAmount(), cal.getTime(), expense));
-                        if (!expenseInserted)
-                        {
-                            Logger.error(false, "Error while inserting expense for recurring expense into DB: persistExpense returned false");
-                            return false;
-                        }
-
-                        cal.add(Calendar.WEEK_OF_YEAR, 1);
-
-                        if (dateEnd != null && cal.getTime().after(dateEnd)) // If we have an end date, stop to that one
-                        {
-                            break;
-                        }
-                    }
-                    break;
-                case BI_WEEKLY:
-                    // Add up to 5 years of expenses
-                    for (int i = 0; i < 12*4*5; i++)
-                    {
-                        boolean expenseInserted = db.persistExpense(new Expense(expense.getTitle(), expense.getAmount(), cal.getTime(), expense));
-                        if (!expenseInserted)
-                        {
-                            Logger.error(false, "Error while inserting expense for recurring expense into DB: persistExpense returned false");
-                            return false;
-                        }
-
-                        cal.add(Calendar.WEEK_OF_YEAR, 2);
-
-                        if (dateEnd != null && cal.getTime().after(dateEnd)) // If we have an end date, stop to that one
-                        {
-                            break;
-                        }
-                    }
-                    break;
-                case MONTHLY:
-                    // Add up to 10 years of expenses
-                    for (int i = 0; i < 12 * 10; i++)
-                    {
-                        boolean expenseInserted = db.persistExpense(new Expense(expense.getTitle(), expense.getAmount(), cal.getTime(), expense));
-                        if (!expenseInserted)
-                        {
-                            Logger.error(false, "Error while inserting expense for recurring expense into DB: persistExpense returned false");
-                            return false;
-                        }
-
-                        cal.add(Calendar.MONTH, 1);
-
-                        if (dateEnd != null && cal.getTime().after(dateEnd)) // If we have an end date, stop to that one
-                        {
-                            break;
-                        }
-                    }
-                    break;
-                case YEARLY:
-                    // Add up to 100 years of expenses
-                    for (int i = 0; i < 100; i++)
-                    {
-                        boolean expenseInserted = db.persistExpense(new Expense(expense.getTitle(), expense.getAmount(), cal.getTime(), expense));
-                        if (!expenseInserted)
-                        {
-                            Logger.error(false, "Error while inserting expense for recurring expense into DB: persistExpense returned false");
-                            return false;
-                        }
-
-                        cal.add(Calendar.YEAR, 1);
-
-                        if (dateEnd != null && cal.getTime().after(dateEnd)) // If we have an end date, stop to that one
-                        {
-                            break;
-                        }
-                    }
-                    break;
-            }
-
-            return true;
-        }
-
-        @Override
-        protected void onPreExecute()
-        {
-            // Show a ProgressDialog
-            dialog = new ProgressDialog(RecurringExpenseEditActivity.this);
-            dialog.setIndeterminate(true);
-            dialog.setTitle(R.string.recurring_expense_add_loading_title);
-            dialog.setMessage(getResources().getString(isRevenue ? R.string.recurring_income_add_loading_message : R.string.recurring_expense_add_loading_message));
-            dialog.setCanceledOnTouchOutside(false);
-            dialog.setCancelable(false);
-            dialog.show();
-        }
-
-        @Override
-        protected void onPostExecute(Boolean result)
-        {
+        // Show a ProgressDialog
+        final ProgressDialog dialog = new ProgressDialog(RecurringExpenseEditActivity.this);
+        dialog.setIndeterminate(true);
+        dialog.setTitle(R.string.recurring_expense_add_loading_title);
+        dialog.setMessage(getResources().getString(isRevenue ? R.string.recurring_income_add_loading_message : R.string.recurring_expense_add_loading_message));
+        dialog.setCanceledOnTouchOutside(false);
+        dialog.setCancelable(false);
+        dialog.show();
+
+        asyncDB.addRecurringExpense(expense, inserted -> {
             // Dismiss the dialog
             dialog.dismiss();
 
-            if (result)
+            if (inserted)
             {
                 setResult(RESULT_OK);
                 finish();
             }
             else
             {
+                Logger.error(false, "Error while inserting recurring expense into DB: addRecurringExpense returned false");
+
                 new AlertDialog.Builder(RecurringExpenseEditActivity.this)
                     .setTitle(R.string.recurring_expense_add_error_title)
                     .setMessage(getResources().getString(R.string.recurring_expense_add_error_message))
-                    .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+                    .setNegativeButton(R.string.ok, (errorDialog, which) -> errorDialog.dismiss())
                     .show();
             }
-        }
+        });
     }
 }
@@ -35,7 +35,7 @@ import com.benoitletondor.easybudgetapp.R;
 import com.benoitletondor.easybudgetapp.helper.UIHelper;
 import com.benoitletondor.easybudgetapp.helper.ParameterKeys;
 import com.benoitletondor.easybudgetapp.helper.Parameters;
-import com.benoitletondor.easybudgetapp.model.db.DB;
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
 import com.benoitletondor.easybudgetapp.view.welcome.Onboarding1Fragment;
 import com.benoitletondor.easybudgetapp.view.welcome.Onboarding2Fragment;
 import com.benoitletondor.easybudgetapp.view.welcome.Onboarding3Fragment;
@@ -235,14 +235,14 @@ public class WelcomeActivity extends DBActivity
     }
 
     /**
-     * Method that a child (fragment) can call to get the DB connexion
+     * Method that a child (fragment) can call to get the async DB connexion
      *
-     * @return the db connexion
+     * @return the async db connexion
      */
     @NonNull
-    public DB getDB()
+    public AsyncDB getAsyncDB()
     {
-        return db;
+        return asyncDB;
     }
 
 // ------------------------------------>
@@ -34,10 +34,10 @@ import com.benoitletondor.easybudgetapp.R;
 import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
 import com.benoitletondor.easybudgetapp.model.Expense;
 import com.benoitletondor.easybudgetapp.model.RecurringExpenseDeleteType;
-import com.benoitletondor.easybudgetapp.model.db.DB;
 import com.benoitletondor.easybudgetapp.view.ExpenseEditActivity;
 import com.benoitletondor.easybudgetapp.view.MainActivity;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -59,14 +59,13 @@ public class ExpensesRecyclerViewAdapter extends RecyclerView.Adapter<ExpensesRe
      * Instanciate an adapter for the given date
      *
      * @param activity
-     * @param db
      * @param date
      */
-    public ExpensesRecyclerViewAdapter(@NonNull Activity activity, @NonNull DB db, @NonNull Date date)
+    public ExpensesRecyclerViewAdapter(@NonNull Activity activity, @NonNull Date date)
     {
         this.activity = activity;
         this.date = date;
-        this.expenses = db.getExpensesForDay(date);
+        this.expenses = new ArrayList<>(0);
     }
 
     /**
@@ -83,12 +82,12 @@ public class ExpensesRecyclerViewAdapter extends RecyclerView.Adapter<ExpensesRe
      * Set a new date to display
      *
      * @param date
-     * @param db
+     * @param expenses expenses of the date
      */
-    public void setDate(@NonNull Date date, @NonNull DB db)
+    public void setDate(@NonNull Date date, @NonNull List<Expense> expenses)
     {
         this.date = date;
-        this.expenses = db.getExpensesForDay(date);
+        this.expenses = expenses;
         notifyDataSetChanged();
     }
 
@@ -146,7 +145,7 @@ public class ExpensesRecyclerViewAdapter extends RecyclerView.Adapter<ExpensesRe
         final Expense expense = expenses.get(i);
 
         viewHolder.expenseTitleTextView.setText(expense.getTitle());
-        viewHolder.expenseAmountTextView.setText(CurrencyHelper.getFormattedCurrencyString(viewHolder.view.getContext(), -expense.getAmount()));
+        viewHolder.expenseAmountTextView.setText(CurrencyHelper.getFormattedCurrencyString(viewHolder.view.getContext(), -expense.getAmount().toDouble()));
         viewHolder.expenseAmountTextView.setTextColor(ContextCompat.getColor(viewHolder.view.getContext(), expense.isRevenue() ? R.color.budget_green : R.color.budget_red));
         viewHolder.recurringIndicator.setVisibility(expense.isRecurring() ? View.VISIBLE : View.GONE);
         viewHolder.positiveIndicator.setImageResource(expense.isRevenue() ? R.drawable.ic_label_green : R.drawable.ic_label_red);
@@ -16,6 +16,7 @@
 
 package com.benoitletondor.easybudgetapp.view.main.calendar;
 
+import com.benoitletondor.easybudgetapp.model.db.DBCache;
 import com.roomorama.caldroid.CaldroidFragment;
 import com.roomorama.caldroid.CaldroidGridAdapter;
 import com.roomorama.caldroid.WeekdayArrayAdapter;
@@ -26,10 +27,37 @@ import java.util.Objects;
 /**
  * @author Benoit LETONDOR
  */
-public class CalendarFragment extends CaldroidFragment
+public class CalendarFragment extends CaldroidFragment implements DBCache.MonthLoadedListener
 {
     private Date selectedDate;
 
+// --------------------------------------->
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+
+        DBCache.getInstance(Objects.requireNonNull(getContext())).addMonthLoadedListener(this);
+    }
+
+    @Override
+    public void onStop()
+    {
+        DBCache.getInstance(Objects.requireNonNull(getContext())).removeMonthLoadedListener(this);
+
+        super.onStop();
+    }
+
+    @Override
+    public void onMonthLoaded(int month)
+    {
+        for(CaldroidGridAdapter adapter : getDatePagerAdapters())
+        {
+            ((CalendarGridAdapter) adapter).onMonthLoaded(month);
+        }
+    }
+
 // --------------------------------------->
 
     @Override
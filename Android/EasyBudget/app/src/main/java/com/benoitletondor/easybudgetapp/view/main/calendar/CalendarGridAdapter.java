@@ -18,19 +18,20 @@ package com.benoitletondor.easybudgetapp.view.main.calendar;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.TextView;
 
 import com.benoitletondor.easybudgetapp.R;
-import com.benoitletondor.easybudgetapp.model.db.DB;
+import com.benoitletondor.easybudgetapp.helper.DateHelper;
+import com.benoitletondor.easybudgetapp.model.db.DBCache;
 import com.roomorama.caldroid.CaldroidGridAdapter;
 
-import java.util.Date;
 import java.util.Map;
-import java.util.TimeZone;
 
 import hirondelle.date4j.DateTime;
 
@@ -39,7 +40,24 @@ import hirondelle.date4j.DateTime;
  */
 public class CalendarGridAdapter extends CaldroidGridAdapter
 {
-    private final DB       db;
+    /**
+     * Labels of the days of the month, so that binding a cell doesn't build a string
+     */
+    private static final String[] DAY_LABELS = new String[32];
+    static
+    {
+        for(int i = 1; i < DAY_LABELS.length; i++)
+        {
+            DAY_LABELS[i] = String.valueOf(i);
+        }
+    }
+
+    private final DBCache  dbCache;
+    /**
+     * Grid displaying the cells of this adapter, used to re-bind cells when data is loaded
+     */
+    @Nullable
+    private AdapterView<?> gridView;
 
 // ----------------------------------->
 
@@ -47,15 +65,38 @@ public class CalendarGridAdapter extends CaldroidGridAdapter
     {
         super(context, month, year, caldroidData, extraData);
 
-        db = new DB(context.getApplicationContext());
+        dbCache = DBCache.getInstance(context);
     }
 
-    @Override
-    protected void finalize() throws Throwable
+// ----------------------------------->
+
+    /**
+     * Re-bind visible cells of the given month once its data is available in cache
+     *
+     * @param month the loaded epoch month (see {@link DateHelper#getEpochMonth(int, int)})
+     */
+    public void onMonthLoaded(int month)
     {
-        db.close();
+        if( gridView == null )
+        {
+            return;
+        }
+
+        final int firstPosition = gridView.getFirstVisiblePosition();
+        for(int i = 0; i < gridView.getChildCount(); i++)
+        {
+            int position = firstPosition + i;
+            if( position >= datetimeList.size() )
+            {
+                break;
+            }
 
-        super.finalize();
+            DateTime dateTime = datetimeList.get(position);
+            if( DateHelper.getEpochMonth(dateTime.getYear(), dateTime.getMonth()) == month )
+            {
+                getView(position, gridView.getChildAt(i), gridView);
+            }
+        }
     }
 
 // ----------------------------------->
@@ -63,6 +104,11 @@ public class CalendarGridAdapter extends CaldroidGridAdapter
     @Override
     public View getView(int position, View convertView, final ViewGroup parent)
     {
+        if( parent instanceof AdapterView )
+        {
+            gridView = (AdapterView<?>) parent;
+        }
+
         final View cellView = convertView == null ? createView(parent) : convertView;
 
         ViewData viewData = (ViewData) cellView.getTag();
@@ -77,7 +123,7 @@ public class CalendarGridAdapter extends CaldroidGridAdapter
         TextView tv2 = viewData.amountTextView;
 
         // Set today's date
-        tv1.setText("" + dateTime.getDay());
+        tv1.setText(DAY_LABELS[dateTime.getDay()]);
 
         // Customize for disabled dates and date outside min/max dates
         if ( isDisabled )
@@ -171,11 +217,13 @@ public class CalendarGridAdapter extends CaldroidGridAdapter
                 }
             }
 
-            final Date date = new Date(dateTime.getMilliseconds(TimeZone.getDefault()));
-            if( db.hasExpensesForDay(date) )
+            // Only read from cache: cells are displayed without amount until the month is loaded
+            // and then re-bound by onMonthLoaded
+            final int day = DateHelper.getEpochDay(dateTime.getYear(), dateTime.getMonth(), dateTime.getDay());
+            final Boolean hasExpenses = dbCache.hasExpensesForDay(day);
+            final long balance = hasExpenses != null && hasExpenses ? dbCache.getBalanceCentsForDay(day) : DBCache.NO_BALANCE;
+            if( balance != DBCache.NO_BALANCE )
             {
-                double balance = db.getBalanceForDay(date);
-
                 if( !viewData.containsExpenses )
                 {
                     tv2.setVisibility(View.VISIBLE);
@@ -183,7 +231,7 @@ public class CalendarGridAdapter extends CaldroidGridAdapter
                     viewData.containsExpenses = true;
                 }
 
-                tv2.setText(String.valueOf(-(int) balance));
+                tv2.setText(String.valueOf(-(balance / 100)));
 
                 if( balance > 0 )
                 {
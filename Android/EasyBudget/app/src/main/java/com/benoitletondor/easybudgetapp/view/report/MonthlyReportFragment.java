@@ -17,9 +17,10 @@
 package com.benoitletondor.easybudgetapp.view.report;
 
 import android.annotation.SuppressLint;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.fragment.app.Fragment;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -33,6 +34,8 @@ import android.widget.TextView;
 import com.benoitletondor.easybudgetapp.R;
 import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
 import com.benoitletondor.easybudgetapp.model.Expense;
+import com.benoitletondor.easybudgetapp.model.Money;
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
 import com.benoitletondor.easybudgetapp.model.db.DB;
 
 import java.util.ArrayList;
@@ -56,11 +59,18 @@ public class MonthlyReportFragment extends Fragment
     /**
      * The computed revenue amount (always >= 0)
      */
-    private double revenuesAmount = 0d;
+    @NonNull
+    private Money revenuesAmount = Money.ZERO;
     /**
      * The computed expenses amount (always >= 0)
      */
-    private double expensesAmount = 0d;
+    @NonNull
+    private Money expensesAmount = Money.ZERO;
+    /**
+     * Asynchronous access to the DB, closed with the view
+     */
+    @Nullable
+    private AsyncDB asyncDB;
 
 // ---------------------------------->
 
@@ -93,8 +103,8 @@ public class MonthlyReportFragment extends Fragment
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState)
     {
         // Reset totals
-        expensesAmount = 0.0d;
-        revenuesAmount = 0.0d;
+        expensesAmount = Money.ZERO;
+        revenuesAmount = Money.ZERO;
 
         // Inflate the layout for this fragment
         final View v = inflater.inflate(R.layout.fragment_monthly_report, container, false);
@@ -107,68 +117,76 @@ public class MonthlyReportFragment extends Fragment
         final TextView expensesAmountTextView = v.findViewById(R.id.monthly_report_fragment_expenses_total_tv);
         final TextView balanceTextView = v.findViewById(R.id.monthly_report_fragment_balance_tv);
 
-        new AsyncTask<Void, Void, MonthlyReportRecyclerViewAdapter>()
-        {
-            @Override
-            protected MonthlyReportRecyclerViewAdapter doInBackground(Void... params)
+        asyncDB = new AsyncDB(Objects.requireNonNull(getContext()));
+        asyncDB.execute(this::buildAdapter, adapter -> {
+            progressBar.setVisibility(View.GONE);
+            content.setVisibility(View.VISIBLE);
+
+            if( adapter != null )
             {
-                final DB db = new DB(Objects.requireNonNull(getContext()));
-                try
-                {
-                    List<Expense> expensesForMonth = db.getExpensesForMonth(date);
-                    if( expensesForMonth.isEmpty() )
-                    {
-                        return null;
-                    }
-
-                    final List<Expense> expenses = new ArrayList<>();
-                    final List<Expense> revenues = new ArrayList<>();
-
-                    for(Expense expense : expensesForMonth)
-                    {
-                        if( expense.isRevenue() )
-                        {
-                            revenues.add(expense);
-                            revenuesAmount -= expense.getAmount();
-                        }
-                        else
-                        {
-                            expenses.add(expense);
-                            expensesAmount += expense.getAmount();
-                        }
-                    }
-
-                    return new MonthlyReportRecyclerViewAdapter(expenses, revenues);
-                }
-                finally
-                {
-                    db.close();
-                }
+                configureRecyclerView(recyclerView, adapter);
             }
-
-            @Override
-            protected void onPostExecute(MonthlyReportRecyclerViewAdapter adapter)
+            else
             {
-                progressBar.setVisibility(View.GONE);
-                content.setVisibility(View.VISIBLE);
-
-                if( adapter != null )
-                {
-                    configureRecyclerView(recyclerView, adapter);
-                }
-                else
-                {
-                    recyclerView.setVisibility(View.GONE);
-                    emptyState.setVisibility(View.VISIBLE);
-                }
-
-                configureTotalView(revenuesAmountTextView, expensesAmountTextView, balanceTextView);
+                recyclerView.setVisibility(View.GONE);
+                emptyState.setVisibility(View.VISIBLE);
             }
-        }.execute();
+
+            configureTotalView(revenuesAmountTextView, expensesAmountTextView, balanceTextView);
+        });
 
         return v;
     }
 
+    @Override
+    public void onDestroyView()
+    {
+        // Don't deliver the report to a destroyed view
+        if( asyncDB != null )
+        {
+            asyncDB.close();
+            asyncDB = null;
+        }
+
+        super.onDestroyView();
+    }
+
+    /**
+     * Load expenses of the month and compute totals
+     *
+     * @param db database link
+     * @return the adapter to display, null if there's no expense for the month
+     */
+    @WorkerThread
+    @Nullable
+    private MonthlyReportRecyclerViewAdapter buildAdapter(@NonNull DB db)
+    {
+        List<Expense> expensesForMonth = db.getExpensesForMonth(date);
+        if( expensesForMonth.isEmpty() )
+        {
+            return null;
+        }
+
+        final List<Expense> expenses = new ArrayList<>();
+        final List<Expense> revenues = new ArrayList<>();
+
+        for(Expense expense : expensesForMonth)
+        {
+            if( expense.isRevenue() )
+            {
+                revenues.add(expense);
+                revenuesAmount = revenuesAmount.minus(expense.getAmount());
+            }
+            else
+            {
+                expenses.add(expense);
+                expensesAmount = expensesAmount.plus(expense.getAmount());
+            }
+        }
+
+        return new MonthlyReportRecyclerViewAdapter(expenses, revenues);
+    }
+
     /**
      * Configure recycler view LayoutManager & adapter
      *
@@ -190,11 +208,11 @@ public class MonthlyReportFragment extends Fragment
      */
     private void configureTotalView(@NonNull TextView revenuesAmountTextView, @NonNull TextView expensesAmountTextView, @NonNull TextView balanceTextView)
     {
-        revenuesAmountTextView.setText(CurrencyHelper.getFormattedCurrencyString(revenuesAmountTextView.getContext(), revenuesAmount));
-        expensesAmountTextView.setText(CurrencyHelper.getFormattedCurrencyString(expensesAmountTextView.getContext(), expensesAmount));
+        revenuesAmountTextView.setText(CurrencyHelper.getFormattedCurrencyString(revenuesAmountTextView.getContext(), revenuesAmount.toDouble()));
+        expensesAmountTextView.setText(CurrencyHelper.getFormattedCurrencyString(expensesAmountTextView.getContext(), expensesAmount.toDouble()));
 
-        double balance = revenuesAmount - expensesAmount;
-        balanceTextView.setText(CurrencyHelper.getFormattedCurrencyString(balanceTextView.getContext(), balance));
-        balanceTextView.setTextColor(ContextCompat.getColor(balanceTextView.getContext(), balance >= 0 ? R.color.budget_green : R.color.budget_red));
+        Money balance = revenuesAmount.minus(expensesAmount);
+        balanceTextView.setText(CurrencyHelper.getFormattedCurrencyString(balanceTextView.getContext(), balance.toDouble()));
+        balanceTextView.setTextColor(ContextCompat.getColor(balanceTextView.getContext(), balance.signum() >= 0 ? R.color.budget_green : R.color.budget_red));
     }
 }
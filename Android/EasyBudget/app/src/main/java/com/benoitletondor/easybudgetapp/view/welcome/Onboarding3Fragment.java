@@ -37,7 +37,8 @@ import com.benoitletondor.easybudgetapp.helper.CurrencyHelper;
 import com.benoitletondor.easybudgetapp.helper.Logger;
 import com.benoitletondor.easybudgetapp.helper.UIHelper;
 import com.benoitletondor.easybudgetapp.model.Expense;
-import com.benoitletondor.easybudgetapp.model.db.DB;
+import com.benoitletondor.easybudgetapp.model.Money;
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
 
 import java.util.Date;
 import java.util.Objects;
@@ -52,6 +53,10 @@ public class Onboarding3Fragment extends OnboardingFragment
     private TextView moneyTextView;
     private EditText amountEditText;
     private Button nextButton;
+    /**
+     * Has the user edited the amount, in which case the loaded balance must not replace it
+     */
+    private boolean amountEdited = false;
 
 // -------------------------------------->
 
@@ -70,19 +75,26 @@ public class Onboarding3Fragment extends OnboardingFragment
         // Inflate the layout for this fragment
         View v = inflater.inflate(R.layout.fragment_onboarding3, container, false);
 
-        DB db = getDB();
-
-        double amount = 0;
-        if( db != null )
-        {
-            amount = -db.getBalanceForDay(new Date());
-        }
-
         moneyTextView = v.findViewById(R.id.onboarding_screen3_initial_amount_money_tv);
         setCurrency();
 
         amountEditText = v.findViewById(R.id.onboarding_screen3_initial_amount_et);
-        amountEditText.setText(amount == 0 ? "0" : String.valueOf(amount));
+        amountEditText.setText("0");
+
+        AsyncDB asyncDB = getAsyncDB();
+        if( asyncDB != null )
+        {
+            asyncDB.getBalanceForDay(new Date(), balance -> {
+                if( balance == null || amountEdited )
+                {
+                    return;
+                }
+
+                final Money amount = balance.negate();
+                amountEditText.setText(amount.isZero() ? "0" : String.valueOf(amount.toDouble()));
+            });
+        }
+
         UIHelper.preventUnsupportedInputForDecimals(amountEditText);
         amountEditText.addTextChangedListener(new TextWatcher()
         {
@@ -101,45 +113,91 @@ public class Onboarding3Fragment extends OnboardingFragment
             @Override
             public void afterTextChanged(Editable s)
             {
+                if( amountEditText.hasFocus() )
+                {
+                    amountEdited = true;
+                }
+
                 setButtonText();
             }
         });
 
         nextButton = v.findViewById(R.id.onboarding_screen3_next_button);
         nextButton.setOnClickListener(v1 -> {
-            DB db1 = getDB();
-            if ( db1 != null)
-            {
-                double currentBalance = -db1.getBalanceForDay(new Date());
-                double newBalance = getAmountValue();
-
-                if (newBalance != currentBalance)
-                {
-                    double diff = newBalance - currentBalance;
-
-                    final Expense expense = new Expense(getResources().getString(R.string.adjust_balance_expense_title), -diff, new Date());
-                    db1.persistExpense(expense);
-                }
-            }
-
-            // Hide keyboard
-            try
+            AsyncDB asyncDB1 = getAsyncDB();
+            if ( asyncDB1 != null)
             {
-                InputMethodManager imm = (InputMethodManager) Objects.requireNonNull(getActivity()).getSystemService(Context.INPUT_METHOD_SERVICE);
-                Objects.requireNonNull(imm).hideSoftInputFromWindow(amountEditText.getWindowToken(), 0);
-            }
-            catch(Exception e)
-            {
-                Logger.error("Error while hiding keyboard", e);
+                final Money newBalance = Money.ofAmount(getAmountValue());
+                final String balanceExpenseTitle = getResources().getString(R.string.adjust_balance_expense_title);
+
+                // Only go to the next step once the balance is saved
+                nextButton.setEnabled(false);
+
+                asyncDB1.execute(db -> {
+                    Money currentBalance = db.getBalanceForDay(new Date()).negate();
+
+                    if (!newBalance.equals(currentBalance))
+                    {
+                        Money diff = newBalance.minus(currentBalance);
+
+                        final Expense expense = new Expense(balanceExpenseTitle, diff.negate(), new Date());
+                        return db.persistExpense(expense);
+                    }
+
+                    return true;
+                }, false, saved -> {
+                    if( !isAdded() )
+                    {
+                        return;
+                    }
+
+                    nextButton.setEnabled(true);
+
+                    if( saved )
+                    {
+                        hideKeyboardAndGoNext(v1);
+                    }
+                    else
+                    {
+                        new AlertDialog.Builder(Objects.requireNonNull(getContext()))
+                            .setTitle(R.string.expense_save_error_title)
+                            .setMessage(R.string.expense_save_error_message)
+                            .setNegativeButton(R.string.ok, (dialog, which) -> dialog.dismiss())
+                            .show();
+                    }
+                });
+
+                return;
             }
 
-            next(v1);
+            hideKeyboardAndGoNext(v1);
         });
         setButtonText();
 
         return v;
     }
 
+    /**
+     * Hide the keyboard and go to the next step
+     *
+     * @param v the clicked view
+     */
+    private void hideKeyboardAndGoNext(@NonNull View v)
+    {
+        // Hide keyboard
+        try
+        {
+            InputMethodManager imm = (InputMethodManager) Objects.requireNonNull(getActivity()).getSystemService(Context.INPUT_METHOD_SERVICE);
+            Objects.requireNonNull(imm).hideSoftInputFromWindow(amountEditText.getWindowToken(), 0);
+        }
+        catch(Exception e)
+        {
+            Logger.error("Error while hiding keyboard", e);
+        }
+
+        next(v);
+    }
+
     @Override
     public void setUserVisibleHint(boolean isVisibleToUser)
     {
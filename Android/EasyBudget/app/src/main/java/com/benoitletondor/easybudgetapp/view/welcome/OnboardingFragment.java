@@ -25,7 +25,7 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import android.view.View;
 
-import com.benoitletondor.easybudgetapp.model.db.DB;
+import com.benoitletondor.easybudgetapp.model.db.AsyncDB;
 import com.benoitletondor.easybudgetapp.view.WelcomeActivity;
 
 import java.util.Objects;
@@ -38,17 +38,17 @@ import java.util.Objects;
 public abstract class OnboardingFragment extends Fragment
 {
     /**
-     * Get a DB connexion if available
+     * Get an async DB connexion if available
      *
-     * @return a db connexion if available, which will always be the case if we are in the Welcome Activity
+     * @return an async db connexion if available, which will always be the case if we are in the Welcome Activity
      */
     @Nullable
-    protected DB getDB()
+    protected AsyncDB getAsyncDB()
     {
         FragmentActivity activity = getActivity();
         if( activity instanceof WelcomeActivity )
         {
-            return ((WelcomeActivity) activity).getDB();
+            return ((WelcomeActivity) activity).getAsyncDB();
         }
 
         return null;
@@ -0,0 +1,152 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.helper;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link CurrencyHelper#getDBValueForDouble(double)} against the previous implementation,
+ * that compared formatted strings, and against the half-even rounding of the exact value.
+ *
+ * @author Benoit LETONDOR
+ */
+public class CurrencyHelperTest
+{
+    /**
+     * Formatter used by the previous implementation
+     */
+    private final NumberFormat format = NumberFormat.getInstance();
+
+    public CurrencyHelperTest()
+    {
+        format.setMaximumFractionDigits(2);
+        format.setMinimumFractionDigits(2);
+        format.setGroupingUsed(false);
+    }
+
+// ------------------------------------->
+
+    @Test
+    public void getDBValueForDoubleRoundsCentsLikeBefore()
+    {
+        for(long cents = -100000; cents <= 500000; cents++)
+        {
+            assertSameValue(cents / 100.d);
+            assertSameValue((cents + 0.5) / 100.d);
+            assertSameValue(cents / 100.d + 1e-9);
+
+            if( cents != 0 ) // See getDBValueForDoubleRoundsTinyNegativeValuesToZero
+            {
+                assertSameValue(cents / 100.d - 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void getDBValueForDoubleRoundsRandomValuesLikeBefore()
+    {
+        final Random random = new Random(42);
+        for(int i = 0; i < 1000000; i++)
+        {
+            final double value = (random.nextDouble() - 0.2) * Math.pow(10, random.nextInt(9));
+            if( value < 0 && value > -0.005 )
+            {
+                continue; // See getDBValueForDoubleRoundsTinyNegativeValuesToZero
+            }
+
+            assertSameValue(value);
+        }
+    }
+
+    @Test
+    public void getDBValueForDoubleRoundsTinyNegativeValuesToZero()
+    {
+        final double[] values = { -0.001, -0.0049, -1e-9, -Double.MIN_VALUE };
+        for(double value : values)
+        {
+            assertEquals(String.valueOf(value), 0, CurrencyHelper.getDBValueForDouble(value));
+            assertEquals(String.valueOf(value), getHalfEvenValue(value), CurrencyHelper.getDBValueForDouble(value));
+
+            // The previous implementation gave -1 since "-0.00" never matched the formatted value of 0
+            assertEquals(String.valueOf(value), -1, getPreviousValue(value));
+        }
+
+        assertEquals(0, CurrencyHelper.getDBValueForDouble(-0.0));
+        assertEquals(-1, CurrencyHelper.getDBValueForDouble(-0.005));
+    }
+
+// ------------------------------------->
+
+    /**
+     * Check that both the previous implementation and the half-even rounding give the same value as
+     * {@link CurrencyHelper#getDBValueForDouble(double)}
+     *
+     * @param value the double value
+     */
+    private void assertSameValue(double value)
+    {
+        final long dbValue = CurrencyHelper.getDBValueForDouble(value);
+
+        assertEquals(String.valueOf(value), getPreviousValue(value), dbValue);
+        assertEquals(String.valueOf(value), getHalfEvenValue(value), dbValue);
+    }
+
+    /**
+     * Previous implementation of {@link CurrencyHelper#getDBValueForDouble(double)}
+     *
+     * @param value the double value
+     * @return the corresponding int value (double * 100)
+     */
+    private long getPreviousValue(double value)
+    {
+        String stringValue = format.format(value);
+
+        long ceiledValue = (long) Math.ceil(value * 100);
+        double ceiledDoubleValue = ceiledValue / 100.d;
+
+        if( format.format(ceiledDoubleValue).equals(stringValue) )
+        {
+            return ceiledValue;
+        }
+
+        long normalValue = (long) value * 100;
+        double normalDoubleValue = normalValue / 100.d;
+
+        if( format.format(normalDoubleValue).equals(stringValue) )
+        {
+            return normalValue;
+        }
+
+        return (long) Math.floor(value * 100);
+    }
+
+    /**
+     * @param value the double value
+     * @return the exact value of the double * 100, rounded half-even
+     */
+    private static long getHalfEvenValue(double value)
+    {
+        return new BigDecimal(value).movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+}
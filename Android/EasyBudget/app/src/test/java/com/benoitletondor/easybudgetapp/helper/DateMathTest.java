@@ -0,0 +1,254 @@
+/*
+ *   Copyright 2015 Benoit LETONDOR
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.benoitletondor.easybudgetapp.helper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link DateMath} against {@link LocalDate} for the calendar arithmetic and against
+ * {@link Calendar} for local days, including timezones where 00:00 is skipped or happens twice.
+ *
+ * @author Benoit LETONDOR
+ */
+public class DateMathTest
+{
+    /**
+     * Timezones with DST transitions at midnight, and one without for reference
+     */
+    private static final String[] TIME_ZONES = { "America/Sao_Paulo", "America/Havana", "America/Santiago", "Asia/Beirut", "Europe/Paris" };
+    /**
+     * Length of an hour in ms
+     */
+    private static final long HOUR_LENGTH = 60 * 60 * 1000L;
+
+    /**
+     * Default timezone before the test, restored after
+     */
+    private TimeZone defaultTimeZone;
+
+// ------------------------------------->
+
+    @Before
+    public void setUp()
+    {
+        defaultTimeZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void tearDown()
+    {
+        setTimeZone(defaultTimeZone);
+    }
+
+// ------------------------------------->
+
+    @Test
+    public void epochDaysAndMonthsMatchLocalDate()
+    {
+        final int firstDay = (int) LocalDate.of(1600, 1, 1).toEpochDay();
+        final int lastDay = (int) LocalDate.of(2400, 12, 31).toEpochDay();
+        assertTrue(firstDay < 0);
+
+        for(int epochDay = firstDay; epochDay <= lastDay; epochDay++)
+        {
+            final LocalDate date = LocalDate.ofEpochDay(epochDay);
+            final int epochMonth = date.getYear() * 12 + date.getMonthValue() - 1;
+
+            assertEquals(date.toString(), epochDay, DateMath.getEpochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+            assertEquals(date.toString(), epochMonth, DateMath.getEpochMonth(date.getYear(), date.getMonthValue()));
+            assertEquals(date.toString(), epochMonth, DateMath.getEpochMonth(epochDay));
+            assertEquals(date.toString(), date.withDayOfMonth(1).toEpochDay(), DateMath.getFirstEpochDayOfMonth(epochMonth));
+        }
+    }
+
+    @Test
+    public void dayStartsMatchCalendar()
+    {
+        for(String zoneId : TIME_ZONES)
+        {
+            setTimeZone(TimeZone.getTimeZone(zoneId));
+
+            final int firstDay = (int) LocalDate.of(1985, 1, 1).toEpochDay();
+            final int lastDay = (int) LocalDate.of(2030, 12, 31).toEpochDay();
+            for(int epochDay = firstDay; epochDay <= lastDay; epochDay++)
+            {
+                final long dayStart = getCalendarDayStart(epochDay);
+                final String message = zoneId + " " + LocalDate.ofEpochDay(epochDay);
+
+                // Without cached day, then with the day cached by getEpochDay(long)
+                DateMath.onTimeZoneChanged();
+                assertEquals(message, dayStart, DateMath.getDayStart(epochDay));
+                assertEquals(message, epochDay, DateMath.getEpochDay(dayStart));
+                assertEquals(message, dayStart, DateMath.getDayStart(epochDay));
+                assertEquals(message, getCalendarDayStart(epochDay + 1), DateMath.getDayStart(epochDay + 1));
+                assertEquals(message, dayStart, DateMath.getDayStart(dayStart + HOUR_LENGTH));
+            }
+        }
+    }
+
+    @Test
+    public void dayStartsAtMidnightTransitions()
+    {
+        // 00:00 is skipped: the day starts at 01:00
+        setTimeZone(TimeZone.getTimeZone("America/Sao_Paulo"));
+        final int skippedMidnightDay = (int) LocalDate.of(2018, 11, 4).toEpochDay();
+        final long skippedMidnightDayStart = Instant.parse("2018-11-04T03:00:00Z").toEpochMilli();
+
+        assertEquals(skippedMidnightDayStart, DateMath.getDayStart(skippedMidnightDay));
+        assertEquals(skippedMidnightDay, DateMath.getEpochDay(skippedMidnightDayStart));
+        assertEquals(skippedMidnightDay - 1, DateMath.getEpochDay(skippedMidnightDayStart - 1));
+
+        // 00:00 happens twice: the day starts at the last one but contains the first one
+        setTimeZone(TimeZone.getTimeZone("America/Havana"));
+        final int repeatedMidnightDay = (int) LocalDate.of(2018, 11, 4).toEpochDay();
+        final long firstMidnight = Instant.parse("2018-11-04T04:00:00Z").toEpochMilli();
+        final long lastMidnight = Instant.parse("2018-11-04T05:00:00Z").toEpochMilli();
+
+        assertEquals(lastMidnight, DateMath.getDayStart(repeatedMidnightDay));
+        assertEquals(repeatedMidnightDay, DateMath.getEpochDay(firstMidnight));
+        assertEquals(repeatedMidnightDay - 1, DateMath.getEpochDay(firstMidnight - 1));
+        assertEquals(repeatedMidnightDay, DateMath.getEpochDay(lastMidnight));
+        assertEquals(lastMidnight, DateMath.getDayStart(firstMidnight));
+    }
+
+    @Test
+    public void epochDaysOfTimestampsMatchCalendar()
+    {
+        for(String zoneId : TIME_ZONES)
+        {
+            setTimeZone(TimeZone.getTimeZone(zoneId));
+
+            final long first = LocalDate.of(1985, 1, 1).toEpochDay() * DateMath.DAY_LENGTH;
+            final long last = LocalDate.of(2030, 12, 31).toEpochDay() * DateMath.DAY_LENGTH;
+
+            // Every half hour catches every transition, and the ms before it
+            for(long timestamp = first; timestamp <= last; timestamp += HOUR_LENGTH / 2)
+            {
+                assertEquals(zoneId + " " + timestamp, getCalendarEpochDay(timestamp), DateMath.getEpochDay(timestamp));
+                assertEquals(zoneId + " " + (timestamp - 1), getCalendarEpochDay(timestamp - 1), DateMath.getEpochDay(timestamp - 1));
+            }
+        }
+    }
+
+    @Test
+    public void dayStartIsFasterThanCalendar()
+    {
+        setTimeZone(TimeZone.getTimeZone("Europe/Paris"));
+
+        // Random times over a few months, sorted like the days of a displayed month
+        final Random random = new Random(42);
+        final long first = LocalDate.of(2019, 1, 1).toEpochDay() * DateMath.DAY_LENGTH;
+        final long[] timestamps = new long[100000];
+        for(int i = 0; i < timestamps.length; i++)
+        {
+            timestamps[i] = first + (long) (random.nextDouble() * 90 * DateMath.DAY_LENGTH);
+        }
+        Arrays.sort(timestamps);
+
+        long sink = 0;
+        long calendarNanos = 0;
+        long dateMathNanos = 0;
+        for(int run = 0; run < 10; run++) // The first runs only warm up the JIT
+        {
+            long start = System.nanoTime();
+            for(long timestamp : timestamps)
+            {
+                sink += getCalendarDayStart(timestamp);
+            }
+            calendarNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(long timestamp : timestamps)
+            {
+                sink += DateMath.getDayStart(timestamp);
+            }
+            dateMathNanos = System.nanoTime() - start;
+        }
+
+        System.out.println("DateMathTest: day start with Calendar: " + calendarNanos / timestamps.length + " ns/call, with DateMath: " + dateMathNanos / timestamps.length + " ns/call (" + sink % 2 + ")");
+        assertTrue(dateMathNanos < calendarNanos);
+    }
+
+// ------------------------------------->
+
+    /**
+     * Set the default timezone and reset the one cached by {@link DateMath}
+     *
+     * @param timeZone
+     */
+    private static void setTimeZone(TimeZone timeZone)
+    {
+        TimeZone.setDefault(timeZone);
+        DateMath.onTimeZoneChanged();
+    }
+
+    /**
+     * @param epochDay
+     * @return the start of the day computed by a lenient {@link Calendar} set to 00:00
+     */
+    private static long getCalendarDayStart(int epochDay)
+    {
+        final LocalDate date = LocalDate.ofEpochDay(epochDay);
+
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(date.getYear(), date.getMonthValue() - 1, date.getDayOfMonth());
+
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * @param timestamp
+     * @return the start of the day of the timestamp computed by {@link Calendar}, like DateHelper did
+     */
+    private static long getCalendarDayStart(long timestamp)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * @param timestamp
+     * @return the epoch day of the timestamp computed from the {@link Calendar} fields
+     */
+    private static int getCalendarEpochDay(long timestamp)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+
+        return (int) LocalDate.of(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH)).toEpochDay();
+    }
+}